@@ -14,6 +14,7 @@ import com.applitools.eyes.selenium.positioning.RegionPositionCompensation;
 import com.applitools.eyes.selenium.positioning.ScrollPositionProvider;
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
+import com.applitools.utils.ImageBufferPool;
 import com.applitools.utils.ImageUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.openqa.selenium.WebElement;
@@ -313,7 +314,8 @@ public class AppiumFullPageCaptureAlgorithm {
         }
 
         if (!regionInScreenshot.isEmpty()) {
-            partImage = ImageUtils.getImagePart(partImage, regionInScreenshot);
+            // The part is only read when it is stitched into the container, so it doesn't need a copy
+            partImage = ImageUtils.getImagePartView(partImage, regionInScreenshot);
             saveDebugScreenshotPart(partImage, partRegion,
                     "original-scrolled-"
                             + currentPosition.toStringForFilename());
@@ -341,12 +343,19 @@ public class AppiumFullPageCaptureAlgorithm {
         }
 
         debugScreenshotsProvider.save(stitchedImage, "stitched");
+
+        // The pool is shared by all the checks in the process, so these are process totals rather than this check's
+        ImageBufferPool bufferPool = ImageBufferPool.getInstance();
+        logger.log(testId, Stage.CHECK, Type.CAPTURE_SCREENSHOT,
+                Pair.of("processImageBufferAllocatedBytes", bufferPool.getAllocatedBytes()),
+                Pair.of("processImageBufferReusedBytes", bufferPool.getReusedBytes()),
+                Pair.of("processImageBufferPooledBytes", bufferPool.getPooledBytes()));
     }
 
     protected void stitchPartIntoContainer(BufferedImage partImage) {
         // We should stitch images from the start of X coordinate
         stitchedImage.getRaster()
-                .setRect(0, currentPosition.getY(), partImage.getData());
+                .setRect(0, currentPosition.getY(), partImage.getRaster());
     }
 
 
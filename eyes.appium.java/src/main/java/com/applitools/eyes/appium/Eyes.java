@@ -557,6 +557,11 @@ public class Eyes extends EyesBase {
         return result;
     }
 
+    @Override
+    protected byte[] getViewportImageBytes() {
+        return driver == null ? null : driver.getRemoteWebDriver().getScreenshotAs(OutputType.BYTES);
+    }
+
     @Override
     protected String getTitle() {
         return "";
@@ -3,10 +3,17 @@ package com.applitools.eyes.images;
 import com.applitools.eyes.Region;
 import com.applitools.eyes.utils.ReportingTestSuite;
 import com.applitools.utils.ImageUtils;
+import com.applitools.utils.MappedImageDataBuffer;
+import com.applitools.utils.PngEncoder;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 public class TestImageUtils extends ReportingTestSuite {
 
@@ -37,4 +44,232 @@ public class TestImageUtils extends ReportingTestSuite {
         Assert.assertEquals(cropped.getWidth(), 800, "widths differ");
         Assert.assertEquals(cropped.getHeight(), 500, "heights differ");
     }
+
+    private static BufferedImage createImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void TestAreImagesEqual() {
+        int[] types = {ImageUtils.REQUIRED_IMAGE_TYPE, BufferedImage.TYPE_INT_RGB};
+        for (int type : types) {
+            BufferedImage image1 = createImage(300, 200, type);
+            BufferedImage image2 = createImage(300, 200, type);
+            Assert.assertTrue(ImageUtils.areImagesEqual(image1, image2));
+            Assert.assertFalse(ImageUtils.areImagesEqual(image1, createImage(300, 201, type)));
+
+            image2.setRGB(299, 199, 0xFFFFFFFF);
+            Assert.assertFalse(ImageUtils.areImagesEqual(image1, image2));
+
+            // Only the alpha channel differs
+            image2.setRGB(299, 199, image1.getRGB(299, 199));
+            image2.setRGB(0, 0, image1.getRGB(0, 0) & 0x00FFFFFF);
+            Assert.assertEquals(ImageUtils.areImagesEqual(image1, image2), !image1.getColorModel().hasAlpha());
+        }
+    }
+
+    @Test
+    public void TestAreImagesEqual_Region() {
+        BufferedImage image1 = createImage(300, 200, ImageUtils.REQUIRED_IMAGE_TYPE);
+        BufferedImage image2 = createImage(400, 250, ImageUtils.REQUIRED_IMAGE_TYPE);
+        image2.setRGB(10, 10, 0xFFFFFFFF);
+        Assert.assertTrue(ImageUtils.areImagesEqual(image1, image2, new Region(20, 20, 280, 180)));
+        Assert.assertFalse(ImageUtils.areImagesEqual(image1, image2, new Region(0, 0, 300, 200)));
+        Assert.assertFalse(ImageUtils.areImagesEqual(image1, image2, new Region(10, 10, 1, 1)));
+    }
+
+    @Test
+    public void TestAreImagesEqual_SubImage() {
+        BufferedImage image = createImage(300, 200, ImageUtils.REQUIRED_IMAGE_TYPE);
+        BufferedImage expected = ImageUtils.copyImageWithType(image.getSubimage(50, 40, 100, 80), ImageUtils.REQUIRED_IMAGE_TYPE);
+        Assert.assertTrue(ImageUtils.areImagesEqual(image.getSubimage(50, 40, 100, 80), expected));
+        Assert.assertFalse(ImageUtils.areImagesEqual(image.getSubimage(51, 40, 100, 80), expected));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void TestAreImagesEqual_RegionOutOfBounds() {
+        BufferedImage image = createImage(300, 200, ImageUtils.REQUIRED_IMAGE_TYPE);
+        ImageUtils.areImagesEqual(image, image, new Region(250, 0, 100, 100));
+    }
+
+    @Test
+    public void TestEncodeAsPng() throws IOException {
+        BufferedImage image = createImage(300, 200, ImageUtils.REQUIRED_IMAGE_TYPE);
+        image.setRGB(5, 5, 0x7F123456);
+        for (PngEncoder.FilterStrategy filterStrategy : PngEncoder.FilterStrategy.values()) {
+            PngEncoder encoder = new PngEncoder(6, filterStrategy);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            encoder.encode(image, outputStream);
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(outputStream.toByteArray()));
+            Assert.assertTrue(ImageUtils.areImagesEqual(image, decoded), filterStrategy.toString());
+
+            outputStream.reset();
+            encoder.encode(image.getSubimage(30, 20, 100, 50), outputStream);
+            decoded = ImageIO.read(new ByteArrayInputStream(outputStream.toByteArray()));
+            Assert.assertTrue(ImageUtils.areImagesEqual(image.getSubimage(30, 20, 100, 50), decoded), filterStrategy.toString());
+        }
+    }
+
+    @Test
+    public void TestEncodeAsPng_LargeImage() throws IOException {
+        // Large enough for filtering the rows in parallel
+        BufferedImage image = createImage(1000, 1200, ImageUtils.REQUIRED_IMAGE_TYPE);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(ImageUtils.encodeAsPng(image)));
+        Assert.assertTrue(ImageUtils.areImagesEqual(image, decoded));
+
+        BufferedImage rgbImage = createImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        decoded = ImageIO.read(new ByteArrayInputStream(ImageUtils.encodeAsPng(rgbImage)));
+        Assert.assertTrue(ImageUtils.areImagesEqual(rgbImage, decoded));
+    }
+
+    private static void assertPartPixels(BufferedImage part, BufferedImage image, Region region) {
+        Assert.assertEquals(part.getWidth(), region.getWidth());
+        Assert.assertEquals(part.getHeight(), region.getHeight());
+        for (int y = 0; y < region.getHeight(); y++) {
+            for (int x = 0; x < region.getWidth(); x++) {
+                if (part.getRGB(x, y) != image.getRGB(region.getLeft() + x, region.getTop() + y)) {
+                    Assert.fail(String.format("Pixel %d,%d is different", x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestCropImage_Pixels() {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        Region region = new Region(image.getWidth() - 100, 40, 300, 200);
+        Region croppedRegion = new Region(image.getWidth() - 100, 40, 100, 200);
+        assertPartPixels(ImageUtils.cropImage(image, region), image, croppedRegion);
+        assertPartPixels(ImageUtils.cropImageView(image, region), image, croppedRegion);
+
+        Region outsideRegion = new Region(image.getWidth(), 0, 100, 100);
+        Assert.assertSame(ImageUtils.cropImage(image, outsideRegion), image);
+        Assert.assertSame(ImageUtils.cropImageView(image, outsideRegion), image);
+    }
+
+    @Test
+    public void TestGetImagePart() {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        Region region = new Region(13, 27, 300, 200);
+        BufferedImage part = ImageUtils.getImagePart(image, region);
+        Assert.assertEquals(part.getType(), ImageUtils.REQUIRED_IMAGE_TYPE);
+        assertPartPixels(part, image, region);
+
+        // The part has pixels of its own
+        byte[] data = ((DataBufferByte) part.getRaster().getDataBuffer()).getData();
+        Assert.assertEquals(data.length, region.getWidth() * region.getHeight() * 4);
+        int pixel = image.getRGB(region.getLeft(), region.getTop());
+        image.setRGB(region.getLeft(), region.getTop(), ~pixel);
+        Assert.assertEquals(part.getRGB(0, 0), pixel);
+
+        BufferedImage view = ImageUtils.getImagePartView(image, region);
+        Assert.assertEquals(view.getRGB(0, 0), ~pixel);
+    }
+
+    @Test
+    public void TestGetImagePart_MappedImage() throws IOException {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        BufferedImage mapped = MappedImageDataBuffer.createImage(image.getWidth(), image.getHeight());
+        MappedImageDataBuffer.setRect(mapped, 0, 0, image);
+
+        Region region = new Region(13, 27, 300, 200);
+        BufferedImage part = ImageUtils.getImagePart(mapped, region);
+        Assert.assertEquals(part.getType(), ImageUtils.REQUIRED_IMAGE_TYPE);
+        assertPartPixels(part, image, region);
+    }
+
+    @Test
+    public void TestGetImageHash() throws IOException {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        Region region = new Region(13, 27, 300, 200);
+        String hash = ImageUtils.getImageHash(ImageUtils.getImagePart(image, region));
+        Assert.assertEquals(ImageUtils.getImageHash(ImageUtils.getImagePartView(image, region)), hash);
+        Assert.assertEquals(ImageUtils.getImageHash(ImageUtils.copyImageWithType(
+                ImageUtils.getImagePart(image, region), BufferedImage.TYPE_INT_ARGB)), hash);
+
+        BufferedImage mapped = MappedImageDataBuffer.createImage(image.getWidth(), image.getHeight());
+        MappedImageDataBuffer.setRect(mapped, 0, 0, image);
+        Assert.assertEquals(ImageUtils.getImageHash(ImageUtils.getImagePartView(mapped, region)), hash);
+
+        // The same pixels in another size, and a single changed pixel
+        Assert.assertNotEquals(ImageUtils.getImageHash(ImageUtils.getImagePart(image, new Region(13, 27, 200, 300))), hash);
+        BufferedImage changedPart = ImageUtils.getImagePart(image, region);
+        changedPart.setRGB(100, 100, ~changedPart.getRGB(100, 100));
+        Assert.assertNotEquals(ImageUtils.getImageHash(changedPart), hash);
+    }
+
+    @Test
+    public void TestCountChangedBlocks() {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        BufferedImage changed = ImageUtils.getImagePart(image, new Region(0, 0, image.getWidth(), image.getHeight()));
+        Assert.assertEquals(ImageUtils.countChangedBlocks(image, changed, 32, 10), 0);
+
+        // Pixels in two blocks, and in the last partial block
+        changed.setRGB(0, 0, ~changed.getRGB(0, 0));
+        changed.setRGB(31, 31, ~changed.getRGB(31, 31));
+        changed.setRGB(32, 0, ~changed.getRGB(32, 0));
+        int x = image.getWidth() - 1, y = image.getHeight() - 1;
+        changed.setRGB(x, y, ~changed.getRGB(x, y));
+        Assert.assertEquals(ImageUtils.countChangedBlocks(image, changed, 32, 10), 3);
+
+        // Counting stops after the maximum
+        Assert.assertEquals(ImageUtils.countChangedBlocks(image, changed, 32, 1), 2);
+    }
+
+    @Test
+    public void TestScaleImage_PartView() {
+        BufferedImage image = ImageUtils.imageFromFile("resources/minions-800x500.jpg");
+        Region region = new Region(13, 27, 600, 400);
+        BufferedImage part = ImageUtils.getImagePart(image, region);
+        BufferedImage view = ImageUtils.getImagePartView(image, region);
+
+        for (double scaleRatio : new double[]{0.5, 1 / 3.0, 1.5}) {
+            BufferedImage scaledPart = ImageUtils.scaleImage(part, scaleRatio);
+            BufferedImage scaledView = ImageUtils.scaleImage(view, scaleRatio);
+            Assert.assertEquals(scaledPart.getWidth(), (int) Math.ceil(region.getWidth() * scaleRatio));
+            Assert.assertEquals(scaledPart.getHeight(), (int) Math.ceil(region.getHeight() * scaleRatio));
+            Assert.assertEquals(((DataBufferByte) scaledView.getRaster().getDataBuffer()).getData(),
+                    ((DataBufferByte) scaledPart.getRaster().getDataBuffer()).getData());
+        }
+    }
+
+    /**
+     * An image with hard edges and gradients, which is small when scaled and saved as PNG
+     */
+    private static BufferedImage createPatternImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, ImageUtils.REQUIRED_IMAGE_TYPE);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x / 40 + y / 30) % 2 == 0 ? 0xFF : 0;
+                int green = (x + y) / 4 & 0xFF;
+                int blue = x * 3 & 0xFF;
+                int alpha = 0xC0 + (x + y) / 64 % 4 * 0x10;
+                image.setRGB(x, y, alpha << 24 | red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    private static void assertScaledImage(BufferedImage image, double scaleRatio, String expectedPath) {
+        BufferedImage scaled = ImageUtils.scaleImage(image, scaleRatio);
+        BufferedImage expected = ImageUtils.imageFromFile(expectedPath);
+        Assert.assertEquals(scaled.getWidth(), expected.getWidth());
+        Assert.assertEquals(scaled.getHeight(), expected.getHeight());
+        Assert.assertEquals(((DataBufferByte) scaled.getRaster().getDataBuffer()).getData(),
+                ((DataBufferByte) expected.getRaster().getDataBuffer()).getData(), expectedPath);
+    }
+
+    @Test
+    public void TestScaleImage_SameAsPreviousScaler() {
+        // The expected images were scaled by the previous bicubic scaling, which worked on the data buffer elements
+        assertScaledImage(createPatternImage(720, 540), 0.5, "resources/scaled-dpr2.png");
+        assertScaledImage(createPatternImage(360, 270), 1 / 3.0, "resources/scaled-dpr3.png");
+        assertScaledImage(createPatternImage(120, 90), 1.5, "resources/scaled-upscale.png");
+    }
 }
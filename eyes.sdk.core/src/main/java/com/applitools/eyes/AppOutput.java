@@ -1,9 +1,13 @@
 package com.applitools.eyes;
 
+import com.applitools.utils.ImageDeltaCompressor;
 import com.applitools.utils.ImageUtils;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
 /**
  * An application output (title, image, etc).
  */
@@ -26,7 +30,12 @@ public class AppOutput {
     private final EyesScreenshot screenshot;
 
     @JsonIgnore
-    private final byte[] screenshotBytes;
+    private byte[] screenshotBytes;
+
+    @JsonIgnore
+    private volatile String screenshotHash;
+
+    private boolean isScreenshotCompressed = false;
 
     /**
      * @param title           The title of the window.
@@ -56,6 +65,56 @@ public class AppOutput {
         return screenshotBytes;
     }
 
+    /**
+     * @return The hash of the pixels of the screenshot, see {@link ImageUtils#getImageHash(BufferedImage)},
+     * or null if there is no screenshot. It's computed when it's first needed.
+     */
+    public String getScreenshotHash() {
+        if (screenshot == null) {
+            return null;
+        }
+
+        if (screenshotHash == null) {
+            screenshotHash = ImageUtils.getImageHash(screenshot.getImage());
+        }
+        return screenshotHash;
+    }
+
+    /**
+     * @return true if the screenshot bytes were replaced with a delta from a previous image.
+     * Such bytes can only be matched in their session, so their upload can't be shared with other screenshots.
+     */
+    @JsonIgnore
+    public boolean isScreenshotCompressed() {
+        return isScreenshotCompressed;
+    }
+
+    /**
+     * Replaces the screenshot bytes with a delta from a previous image, if the delta is smaller.
+     * @param previousImage The image the screenshot is compared to. Must be the previous image sent in the session.
+     * @return true if the screenshot bytes were replaced.
+     */
+    public boolean compressScreenshot(BufferedImage previousImage) {
+        if (screenshot == null || previousImage == null) {
+            return false;
+        }
+
+        byte[] compressedBytes;
+        try {
+            compressedBytes = ImageDeltaCompressor.compressByRawBlocks(screenshot.getImage(), screenshotBytes, previousImage);
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (compressedBytes.length >= screenshotBytes.length) {
+            return false;
+        }
+
+        screenshotBytes = compressedBytes;
+        isScreenshotCompressed = true;
+        return true;
+    }
+
     public String getDomUrl() {
         return domUrl;
     }
@@ -4,6 +4,7 @@ import com.applitools.ICheckSettings;
 import com.applitools.connectivity.ServerConnector;
 import com.applitools.eyes.capture.AppOutputProvider;
 import com.applitools.eyes.config.Configuration;
+import com.applitools.eyes.config.Feature;
 import com.applitools.eyes.debug.DebugScreenshotsProvider;
 import com.applitools.eyes.debug.FileDebugScreenshotsProvider;
 import com.applitools.eyes.debug.NullDebugScreenshotProvider;
@@ -31,6 +32,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.awt.image.BufferedImage;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
@@ -53,6 +55,9 @@ public abstract class EyesBase implements IEyesBase {
     protected SessionStartInfo sessionStartInfo;
     protected TestResultContainer testResultContainer;
     protected EyesScreenshot lastScreenshot;
+    // The last image sent for matching in the session. Screenshots are delta compressed against it.
+    private BufferedImage lastMatchedImage;
+    private RunningSession lastMatchedSession;
     protected PropertyHandler<ScaleProvider> scaleProviderHandler;
     protected PropertyHandler<CutProvider> cutProviderHandler;
     protected PropertyHandler<PositionProvider> positionProviderHandler;
@@ -458,6 +463,8 @@ public abstract class EyesBase implements IEyesBase {
 
         isOpen = false;
         lastScreenshot = null;
+        lastMatchedImage = null;
+        lastMatchedSession = null;
         clearUserInputs();
         initProviders(true);
 
@@ -614,15 +621,70 @@ public abstract class EyesBase implements IEyesBase {
                 false, options, agentSetupStr, renderId);
     }
 
+    /**
+     * @return true if checks return without waiting for their match results
+     */
+    public boolean isAsyncCheck() {
+        return runner != null && runner.isAsyncCheck();
+    }
+
     public MatchResult performMatch(MatchWindowData data) {
-        MatchResult result = runner.check(getTestId(), data);
-        if (result == null) {
-            throw new EyesException("Failed performing match with the server");
+        BufferedImage matchedImage = null;
+        if (getConfiguration().isFeatureActivated(Feature.DELTA_COMPRESSED_SCREENSHOTS)) {
+            matchedImage = compressScreenshot(data);
+        }
+
+        MatchResult result;
+        try {
+            if (isAsyncCheck()) {
+                // The actual result is reconciled when the test is closed.
+                // A failed upload fails the next async check, which stops compressing against its image.
+                runner.checkAsync(getTestId(), data);
+                result = new MatchResult();
+                result.setAsExpected(true);
+            } else {
+                result = runner.check(getTestId(), data);
+                if (result == null) {
+                    throw new EyesException("Failed performing match with the server");
+                }
+            }
+        } catch (RuntimeException e) {
+            // The server may not have the image, so the next screenshot can't be compressed against it
+            lastMatchedImage = null;
+            lastMatchedSession = null;
+            throw e;
         }
 
+        if (matchedImage != null) {
+            lastMatchedImage = matchedImage;
+            lastMatchedSession = data.getRunningSession();
+        }
         return result;
     }
 
+    /**
+     * Delta compresses the screenshot against the previous image which was matched in the same session
+     * @return The image the next screenshot can be compressed against once this one is matched, or null
+     */
+    private BufferedImage compressScreenshot(MatchWindowData data) {
+        AppOutput appOutput = data.getAppOutput();
+        if (appOutput == null || appOutput.getScreenshot() == null) {
+            return null;
+        }
+
+        if (lastMatchedSession != data.getRunningSession()) {
+            lastMatchedImage = null;
+        }
+
+        int originalLength = appOutput.getScreenshotBytes().length;
+        if (appOutput.compressScreenshot(lastMatchedImage)) {
+            logger.log(TraceLevel.Info, getTestId(), Stage.CHECK, Pair.of("originalScreenshotSize", originalLength),
+                    Pair.of("compressedScreenshotSize", appOutput.getScreenshotBytes().length));
+        }
+
+        return appOutput.getScreenshot().getImage();
+    }
+
     /**
      * See {@link #checkWindowBase(Region, String, int, String)}.
      * {@code retryTimeout} defaults to {@code USE_DEFAULT_TIMEOUT}.
@@ -891,6 +953,15 @@ public abstract class EyesBase implements IEyesBase {
      */
     protected abstract EyesScreenshot getScreenshot(Region targetRegion, ICheckSettingsInternal checkSettingsInternal);
 
+    /**
+     * Captures the viewport as the encoded image returned by the driver, without decoding, scaling or stitching it.
+     * It's used for detecting if the page still changes before retrying a match.
+     * @return The encoded viewport image, or {@code null} if the SDK can't capture it quickly.
+     */
+    protected byte[] getViewportImageBytes() {
+        return null;
+    }
+
     /**
      * @return The current title of of the AUT.
      */
@@ -6,28 +6,57 @@ package com.applitools.eyes;
 import com.applitools.eyes.logging.ClientEvent;
 import com.applitools.eyes.logging.TraceLevel;
 import com.applitools.utils.ArgumentGuard;
+import com.applitools.utils.CountingOutputStream;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Writes log messages to a file.
+ * Messages are serialized and written by a background thread, which flushes the file once per group of messages.
  */
 public class FileLogger extends LogHandler {
+    private static final int MAX_QUEUED_EVENTS = 10000;
+    private static final int MAX_EVENTS_PER_WRITE = 1000;
+    private static final int CLOSE_TIMEOUT = 10000;
+    private static final int QUEUE_TIMEOUT = 1000;
+
+    // Shared by all the file loggers. Writing values doesn't close or flush the file.
+    private static final ObjectWriter jsonWriter = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false)
+            .configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false)
+            .writer();
+
     private final String filename;
     private final boolean append;
+    private final BlockingQueue<ClientEvent> eventsQueue = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+    private long maxFileLength = 0;
+    private long maxFileAge = 0;
+    private final AtomicLong droppedEventsCount = new AtomicLong();
+    private volatile boolean isOpen = false;
+
+    // Once the file is open, it's only written, rolled and closed by the writer thread
     private BufferedWriter fileWriter;
+    private CountingOutputStream fileStream;
+    private long fileOpenTime;
+    private Thread writerThread;
 
     public FileLogger(String filename, boolean append, boolean isVerbose) {
         super(isVerbose ? TraceLevel.Debug : TraceLevel.Notice);
         ArgumentGuard.notNullOrEmpty(filename, "filename");
         this.filename = filename;
         this.append = append;
-        fileWriter = null;
     }
 
     public FileLogger(String filename, boolean append, TraceLevel level) {
@@ -35,7 +64,6 @@ public class FileLogger extends LogHandler {
         ArgumentGuard.notNullOrEmpty(filename, "filename");
         this.filename = filename;
         this.append = append;
-        fileWriter = null;
     }
 
     public FileLogger(boolean isVerbose) {
@@ -46,28 +74,67 @@ public class FileLogger extends LogHandler {
         this("eyes.log", true, level);
     }
 
+    /**
+     * Once the log file reaches the given length, it is renamed and a new log file is started.
+     * @param maxFileLength The maximal length of the log file in bytes, or 0 for no limit.
+     */
+    public void setMaxFileLength(long maxFileLength) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxFileLength, "maxFileLength");
+        this.maxFileLength = maxFileLength;
+    }
+
+    /**
+     * Once the log file was written for the given time, it is renamed and a new log file is started.
+     * @param maxFileAge The maximal time to write the log file in milliseconds, or 0 for no limit.
+     */
+    public void setMaxFileAge(long maxFileAge) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxFileAge, "maxFileAge");
+        this.maxFileAge = maxFileAge;
+    }
+
     /**
      * Open the log file for writing.
      */
-    public void open() {
-        if (fileWriter != null) {
+    public synchronized void open() {
+        if (isOpen) {
             return;
         }
 
-        try {
-            File file = new File(filename);
-            File path = file.getParentFile();
-            if (path != null && !path.exists()) {
-                System.out.println("No Folder");
-                boolean success = path.mkdirs();
-                if (success) {
-                    System.out.println("Folder created");
-                } else {
-                    System.out.printf("Failed creating folder %s%n", path.getAbsolutePath());
-                }
+        if (writerThread != null && writerThread.isAlive()) {
+            System.out.printf("Failed opening log file %s, it's still being closed%n", filename);
+            return;
+        }
+
+        File file = new File(filename);
+        File path = file.getParentFile();
+        if (path != null && !path.exists()) {
+            System.out.println("No Folder");
+            boolean success = path.mkdirs();
+            if (success) {
+                System.out.println("Folder created");
+            } else {
+                System.out.printf("Failed creating folder %s%n", path.getAbsolutePath());
             }
+        }
 
-            fileWriter = new BufferedWriter(new FileWriter(file, append));
+        openFile(file, append);
+        isOpen = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeEvents();
+            }
+        }, "FileLogger-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void openFile(File file, boolean append) {
+        try {
+            CountingOutputStream stream = new CountingOutputStream(new FileOutputStream(file, append));
+            fileWriter = new BufferedWriter(new OutputStreamWriter(stream));
+            fileStream = stream;
+            fileOpenTime = System.currentTimeMillis();
         } catch (IOException e) {
             throw new EyesException("Failed to create log file!", e);
         }
@@ -75,35 +142,118 @@ public class FileLogger extends LogHandler {
 
     @Override
     public void onMessageInner(ClientEvent clientEvent) {
-        if (fileWriter != null) {
-            try {
-                synchronized (fileWriter) {
-                    fileWriter.write(new ObjectMapper().writeValueAsString(clientEvent));
-                    fileWriter.newLine();
-                    fileWriter.flush();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        if (!isOpen) {
+            return;
+        }
+
+        try {
+            // Waits a little if the writer can't keep up, but a writer which stopped never blocks the logging thread
+            if (!eventsQueue.offer(clientEvent, QUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                droppedEventsCount.incrementAndGet();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Close the log file for writing.
+     * Runs on the writer thread until the logger is closed
      */
-    public void close() {
-        try {
-            if (fileWriter != null) {
-                fileWriter.close();
+    private void writeEvents() {
+        List<ClientEvent> events = new ArrayList<>(MAX_EVENTS_PER_WRITE);
+        while (true) {
+            try {
+                events.add(eventsQueue.take());
+            } catch (InterruptedException e) {
+                break;
             }
+
+            eventsQueue.drainTo(events, MAX_EVENTS_PER_WRITE - 1);
+            writeEvents(events);
+            events.clear();
+        }
+
+        // The logger is being closed, so the rest of the messages are written
+        eventsQueue.drainTo(events);
+        writeEvents(events);
+        try {
+            fileWriter.close();
         } catch (IOException ignored) {
         }
-        fileWriter = null;
+    }
+
+    private void writeEvents(List<ClientEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (ClientEvent event : events) {
+                jsonWriter.writeValue(fileWriter, event);
+                fileWriter.newLine();
+            }
+            fileWriter.flush();
+            rollFileIfNeeded();
+        } catch (Throwable t) {
+            // The writer thread keeps running, otherwise the logging threads would wait for it
+            t.printStackTrace();
+        }
+    }
+
+    private void rollFileIfNeeded() throws IOException {
+        boolean isTooLong = maxFileLength > 0 && fileStream.getBytesCount() >= maxFileLength;
+        boolean isTooOld = maxFileAge > 0 && System.currentTimeMillis() - fileOpenTime >= maxFileAge;
+        if (!isTooLong && !isTooOld) {
+            return;
+        }
+
+        File file = new File(filename);
+        String rolledFilename = String.format("%s.%d", filename, System.currentTimeMillis());
+        File rolledFile = new File(rolledFilename);
+        for (int i = 1; rolledFile.exists(); i++) {
+            rolledFile = new File(String.format("%s-%d", rolledFilename, i));
+        }
+        if (!file.renameTo(rolledFile)) {
+            // Opening the log file again would truncate it, so the current file is still written
+            System.out.printf("Failed renaming log file to %s%n", rolledFile.getAbsolutePath());
+            return;
+        }
+
+        // The rolled file is only closed once the new file is open, so a failure keeps writing the rolled file
+        BufferedWriter rolledWriter = fileWriter;
+        openFile(file, false);
+        rolledWriter.close();
+    }
+
+    /**
+     * Close the log file for writing, after writing the waiting messages.
+     */
+    public synchronized void close() {
+        if (!isOpen) {
+            return;
+        }
+
+        // The writer thread closes the file once it wrote the waiting messages
+        isOpen = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            System.out.printf("Timed out writing logs after %d ms%n", CLOSE_TIMEOUT);
+        }
+
+        if (droppedEventsCount.get() > 0) {
+            System.out.printf("Log events not written: %d dropped%n", droppedEventsCount.getAndSet(0));
+        }
     }
 
     @Override
     public boolean isOpen() {
-        return fileWriter != null;
+        return isOpen;
     }
 
     @Override
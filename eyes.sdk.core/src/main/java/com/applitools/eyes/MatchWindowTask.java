@@ -6,13 +6,16 @@ import com.applitools.eyes.config.Configuration;
 import com.applitools.eyes.fluent.*;
 import com.applitools.eyes.logging.Stage;
 import com.applitools.eyes.logging.TraceLevel;
+import com.applitools.eyes.logging.Type;
 import com.applitools.eyes.visualgrid.model.IGetFloatingRegionOffsets;
 import com.applitools.eyes.visualgrid.model.MutableRegion;
 import com.applitools.eyes.visualgrid.model.VisualGridSelector;
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
+import com.applitools.utils.ImageUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -21,8 +24,18 @@ import java.util.List;
 public class MatchWindowTask {
 
     private static final int MATCH_INTERVAL = 500; // Milliseconds
+
+    // After a match retry whose screenshot changed, the viewport is captured until it stops changing,
+    // with growing intervals. Full screenshots are still taken at most once per MATCH_INTERVAL.
+    private static final int MIN_STABILITY_INTERVAL = 100; // Milliseconds
+    private static final int MAX_STABILITY_WAIT = 2000; // Milliseconds
+    private static final int STABILITY_BLOCK_SIZE = 32;
+
+    // A few changed blocks, like a blinking caret, don't stop the page from being stable
+    private static final double STABILITY_MAX_CHANGED_BLOCKS_RATIO = 0.001;
     private EyesScreenshot lastScreenshot = null;
     private String lastScreenshotHash;
+    private boolean isScreenshotChanging;
     private final int defaultRetryTimeout;
 
     protected Logger logger;
@@ -322,10 +335,12 @@ public class MatchWindowTask {
                                           int retryTimeout, String source) {
         EyesScreenshot screenshot;
         lastScreenshotHash = null;
+        isScreenshotChanging = false;
 
         // If the wait to load time is 0, or "run once" is true,
         // we perform a single check window.
-        if (0 == retryTimeout || shouldMatchWindowRunOnceOnTimeout) {
+        // Asynchronous checks don't know the match result, so they can't be retried.
+        if (0 == retryTimeout || shouldMatchWindowRunOnceOnTimeout || eyes.isAsyncCheck()) {
             if (shouldMatchWindowRunOnceOnTimeout) {
                 GeneralUtils.sleep(retryTimeout);
             }
@@ -350,8 +365,13 @@ public class MatchWindowTask {
         // The match retry loop.
         while (retry < retryTimeout) {
 
-            // Wait before trying again.
-            GeneralUtils.sleep(MATCH_INTERVAL);
+            // Wait before trying again. Viewport captures are only worth their cost while the page is changing,
+            // an unchanged screenshot already skips the match.
+            if (isScreenshotChanging) {
+                waitForStableViewport(start + retryTimeout);
+            } else {
+                GeneralUtils.sleep(MATCH_INTERVAL);
+            }
 
             screenshot = tryTakeScreenshot(userInputs, region, tag, checkSettingsInternal, imageMatchSettings, source);
 
@@ -369,16 +389,121 @@ public class MatchWindowTask {
         return screenshot;
     }
 
+    /**
+     * Waits until the viewport stops changing, so the server isn't asked to match a page which is still animating.
+     * The viewport is captured with growing intervals until a capture is the same as the previous one,
+     * up to {@link #MAX_STABILITY_WAIT} or the deadline. Full screenshots are still at least {@link #MATCH_INTERVAL}
+     * apart, and without viewport captures it just waits {@link #MATCH_INTERVAL}.
+     * @param retryDeadline The time after which the retries stop.
+     */
+    private void waitForStableViewport(long retryDeadline) {
+        long start = System.currentTimeMillis();
+        long notBefore = start + MATCH_INTERVAL;
+        long deadline = Math.max(notBefore, Math.min(retryDeadline, start + MAX_STABILITY_WAIT));
+        ViewportCapture previousCapture = captureViewport();
+        if (previousCapture == null) {
+            GeneralUtils.sleep(MATCH_INTERVAL);
+            return;
+        }
+
+        int interval = MIN_STABILITY_INTERVAL;
+        int captures = 1;
+        boolean isStable = false;
+        long remaining = deadline - System.currentTimeMillis();
+        while (!isStable && remaining > 0) {
+            GeneralUtils.sleep(Math.min(interval, remaining));
+            ViewportCapture capture = captureViewport();
+            if (capture == null) {
+                break;
+            }
+
+            captures++;
+            try {
+                isStable = previousCapture.isSameAs(capture);
+            } catch (Throwable t) {
+                GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.CAPTURE_SCREENSHOT, t, eyes.getTestId());
+                break;
+            }
+
+            previousCapture = capture;
+            interval = Math.min(interval * 2, MATCH_INTERVAL);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        remaining = notBefore - System.currentTimeMillis();
+        if (remaining > 0) {
+            GeneralUtils.sleep(remaining);
+        }
+
+        logger.log(TraceLevel.Info, Collections.singleton(eyes.getTestId()), Stage.CHECK, Type.CAPTURE_SCREENSHOT,
+                Pair.of("isViewportStable", isStable),
+                Pair.of("viewportCaptures", captures),
+                Pair.of("stabilityWait", System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @return The viewport capture, or null if it can't be captured
+     */
+    private ViewportCapture captureViewport() {
+        try {
+            byte[] bytes = eyes.getViewportImageBytes();
+            return bytes == null ? null : new ViewportCapture(bytes);
+        } catch (Throwable t) {
+            GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.CAPTURE_SCREENSHOT, t, eyes.getTestId());
+            return null;
+        }
+    }
+
+    /**
+     * A viewport image which is only decoded if its bytes are different from the image it's compared with
+     */
+    private static class ViewportCapture {
+        private final byte[] bytes;
+        private BufferedImage image;
+
+        ViewportCapture(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private BufferedImage getImage() {
+            if (image == null) {
+                image = ImageUtils.imageFromBytes(bytes);
+            }
+            return image;
+        }
+
+        boolean isSameAs(ViewportCapture other) {
+            if (Arrays.equals(bytes, other.bytes)) {
+                return true;
+            }
+
+            BufferedImage image1 = getImage();
+            BufferedImage image2 = other.getImage();
+            if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) {
+                return false;
+            }
+
+            int blocksX = (image1.getWidth() + STABILITY_BLOCK_SIZE - 1) / STABILITY_BLOCK_SIZE;
+            int blocksY = (image1.getHeight() + STABILITY_BLOCK_SIZE - 1) / STABILITY_BLOCK_SIZE;
+            int maxChangedBlocks = (int) (blocksX * blocksY * STABILITY_MAX_CHANGED_BLOCKS_RATIO);
+            return ImageUtils.countChangedBlocks(image1, image2, STABILITY_BLOCK_SIZE, maxChangedBlocks) <= maxChangedBlocks;
+        }
+    }
+
     private EyesScreenshot tryTakeScreenshot(Trigger[] userInputs, Region region, String tag,
                                              ICheckSettingsInternal checkSettingsInternal,
                                              ImageMatchSettings imageMatchSettings, String source) {
         AppOutput appOutput = appOutputProvider.getAppOutput(region, checkSettingsInternal, imageMatchSettings);
         EyesScreenshot screenshot = appOutput.getScreenshot();
-        String currentScreenshotHash = GeneralUtils.getSha256hash(appOutput.getScreenshotBytes());
-        if (currentScreenshotHash.equals(lastScreenshotHash)) {
+        // The hash of the pixels is also used by the runner for sharing the upload of identical screenshots
+        String currentScreenshotHash = appOutput.getScreenshotHash();
+        if (currentScreenshotHash != null && currentScreenshotHash.equals(lastScreenshotHash)) {
+            isScreenshotChanging = false;
             return screenshot;
         }
 
+        isScreenshotChanging = currentScreenshotHash != null && lastScreenshotHash != null;
+
         ImageMatchSettings matchSettings = createImageMatchSettings(checkSettingsInternal, screenshot, eyes);
         MatchWindowData data = eyes.prepareForMatch(checkSettingsInternal, Arrays.asList(userInputs), appOutput, tag, lastScreenshotHash != null,
                 matchSettings, null, source);
@@ -11,15 +11,48 @@ import com.applitools.utils.GeneralUtils;
 import org.apache.http.HttpStatus;
 
 import java.util.Calendar;
+import java.util.List;
 import java.util.Objects;
 import java.util.TimeZone;
-
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends log messages to the server in batches.
+ * Messages are only queued on the logging thread. The batches are sent by a background thread, once enough messages
+ * are queued or after a short interval.
+ */
 public class NetworkLogHandler extends LogHandler {
 
     private static final int MAX_EVENTS_SIZE = 100;
+    int MAX_QUEUED_EVENTS = 10000;
+    int FLUSH_INTERVAL = 2000;
+    int CLOSE_TIMEOUT = 10000;
+
+    // A single thread shared by all the network log handlers, so sending logs never blocks the logging threads
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NetworkLogFlusher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     private final ServerConnector serverConnector;
-    final LogSessionsClientEvents clientEvents;
+    private final Object lock = new Object();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // The events which weren't taken by the flusher yet
+    LogSessionsClientEvents clientEvents;
+    private ScheduledFuture<?> flushFuture;
+    private final AtomicLong droppedEventsCount = new AtomicLong();
+    private final AtomicLong failedEventsCount = new AtomicLong();
 
     protected NetworkLogHandler(ServerConnector serverConnector) {
         super(TraceLevel.Notice);
@@ -33,17 +66,45 @@ public class NetworkLogHandler extends LogHandler {
 
     @Override
     public void onMessageInner(ClientEvent event) {
-        synchronized (clientEvents) {
-            clientEvents.addEvent(event);
-            if (clientEvents.size() >= MAX_EVENTS_SIZE) {
-                sendLogs();
+        synchronized (lock) {
+            // When the server can't keep up, new events are dropped rather than blocking the logging thread
+            if (clientEvents.size() >= MAX_QUEUED_EVENTS) {
+                droppedEventsCount.incrementAndGet();
+                return;
             }
+
+            clientEvents.addEvent(event);
+            scheduleFlush(clientEvents.size() >= MAX_EVENTS_SIZE ? 0 : FLUSH_INTERVAL);
         }
     }
 
+    /**
+     * Sends the queued events, waiting up to {@link #CLOSE_TIMEOUT} milliseconds.
+     */
     @Override
     public void close() {
-        sendLogs();
+        Future<?> future;
+        synchronized (lock) {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            future = flusher.submit(flushTask);
+        }
+
+        try {
+            future.get(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            System.out.printf("Timed out sending logs after %d ms%n", CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.printf("Failed sending logs: %s%n", e.getCause());
+        }
+
+        if (droppedEventsCount.get() > 0 || failedEventsCount.get() > 0) {
+            System.out.printf("Log events not sent: %d dropped, %d failed%n", droppedEventsCount.get(), failedEventsCount.get());
+        }
     }
 
     @Override
@@ -51,18 +112,73 @@ public class NetworkLogHandler extends LogHandler {
         return false;
     }
 
-    private void sendLogs() {
-        synchronized (clientEvents) {
+    /**
+     * @return The number of events which were dropped since too many events were queued
+     */
+    public long getDroppedEventsCount() {
+        return droppedEventsCount.get();
+    }
+
+    /**
+     * @return The number of events which the server failed to receive
+     */
+    public long getFailedEventsCount() {
+        return failedEventsCount.get();
+    }
+
+    /**
+     * Makes sure the queued events are flushed within the given delay. Must be called while holding the lock.
+     */
+    private void scheduleFlush(long delay) {
+        if (flushFuture != null) {
+            if (flushFuture.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                return;
+            }
+            flushFuture.cancel(false);
+        }
+
+        flushFuture = flusher.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs on the flusher thread only, so the batches are sent one at a time
+     */
+    private void flush() {
+        LogSessionsClientEvents events;
+        synchronized (lock) {
+            flushFuture = null;
             if (clientEvents.size() == 0) {
                 return;
             }
 
-            final SyncTaskListener<Void> listener = new SyncTaskListener<>(null, "sendLogs");
+            events = clientEvents;
+            clientEvents = new LogSessionsClientEvents();
+        }
+
+        if (events.size() <= MAX_EVENTS_SIZE) {
+            sendLogs(events);
+            return;
+        }
+
+        List<ClientEvent> eventsList = events.getEvents();
+        for (int i = 0; i < eventsList.size(); i += MAX_EVENTS_SIZE) {
+            LogSessionsClientEvents batch = new LogSessionsClientEvents();
+            for (ClientEvent event : eventsList.subList(i, Math.min(i + MAX_EVENTS_SIZE, eventsList.size()))) {
+                batch.addEvent(event);
+            }
+            sendLogs(batch);
+        }
+    }
+
+    private void sendLogs(final LogSessionsClientEvents events) {
+        final SyncTaskListener<Void> listener = new SyncTaskListener<>(null, "sendLogs");
+        try {
             serverConnector.sendLogs(new AsyncRequestCallback() {
                 @Override
                 public void onComplete(Response response) {
                     if (response.getStatusCode() != HttpStatus.SC_OK) {
                         System.out.printf("Failed sending logs. Status code %d%n", response.getStatusCode());
+                        failedEventsCount.addAndGet(events.size());
                     }
                     listener.onComplete(null);
                 }
@@ -70,13 +186,17 @@ public class NetworkLogHandler extends LogHandler {
                 @Override
                 public void onFail(Throwable throwable) {
                     System.out.printf("Failed sending logs: %s%n", throwable);
+                    failedEventsCount.addAndGet(events.size());
                     listener.onComplete(null);
                 }
-            }, clientEvents);
-
-           listener.get();
-           clientEvents.clear();
+            }, events);
+        } catch (Throwable t) {
+            System.out.printf("Failed sending logs: %s%n", t);
+            failedEventsCount.addAndGet(events.size());
+            return;
         }
+
+        listener.get();
     }
 
     public static void sendSingleLog(ServerConnector serverConnector, TraceLevel level, String message) {
@@ -3,5 +3,7 @@ package com.applitools.eyes.config;
 public enum Feature {
     UNUSED,
     NO_SWITCH_WITHOUT_FRAME_CHAIN,
-    USE_PREDEFINED_DEVICE_INFO
+    USE_PREDEFINED_DEVICE_INFO,
+    DELTA_COMPRESSED_SCREENSHOTS,
+    SKIP_CACHED_RESOURCES
 }
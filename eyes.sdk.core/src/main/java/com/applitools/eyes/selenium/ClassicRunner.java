@@ -8,16 +8,153 @@ import com.applitools.eyes.services.CheckService;
 import com.applitools.eyes.services.CloseService;
 import com.applitools.eyes.services.OpenService;
 import com.applitools.eyes.visualgrid.services.ServiceTaskListener;
+import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 public class ClassicRunner extends EyesRunner {
+    public static final int DEFAULT_MAX_CHECKS_IN_FLIGHT_PER_TEST = 3;
+
+    /**
+     * The checks of a single test which run in the background.
+     * The screenshots are uploaded in parallel, but the matches are sent one by one, in the order of the checks.
+     */
+    private class AsyncChecks {
+        private final String testId;
+        private final Semaphore inFlightPermits;
+        private final int maxInFlight;
+        private final LinkedList<AsyncCheck> checks = new LinkedList<>();
+        private boolean isMatchInFlight = false;
+        private Throwable error = null;
+
+        AsyncChecks(String testId, int maxInFlight) {
+            this.testId = testId;
+            this.maxInFlight = maxInFlight;
+            this.inFlightPermits = new Semaphore(maxInFlight);
+        }
+
+        void add(final MatchWindowData matchWindowData) {
+            try {
+                inFlightPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EyesException("Interrupted while waiting for previous checks", e);
+            }
+
+            final AsyncCheck check = new AsyncCheck(matchWindowData);
+            synchronized (this) {
+                checks.add(check);
+            }
+
+            checkService.tryUploadImage(testId, matchWindowData, new ServiceTaskListener<Void>() {
+                @Override
+                public void onComplete(Void taskResponse) {
+                    synchronized (AsyncChecks.this) {
+                        check.isUploaded = true;
+                    }
+                    startNextMatch();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.UPLOAD_COMPLETE, t, testId);
+                    synchronized (AsyncChecks.this) {
+                        check.isUploaded = true;
+                        check.error = t;
+                    }
+                    startNextMatch();
+                }
+            });
+        }
+
+        private void startNextMatch() {
+            while (true) {
+                final AsyncCheck check;
+                synchronized (this) {
+                    if (isMatchInFlight || checks.isEmpty() || !checks.getFirst().isUploaded) {
+                        return;
+                    }
+
+                    check = checks.getFirst();
+                    if (check.error != null) {
+                        onCheckCompleted(check.error);
+                        continue;
+                    }
+                    isMatchInFlight = true;
+                }
+
+                checkService.matchWindow(testId, check.matchWindowData, new ServiceTaskListener<MatchResult>() {
+                    @Override
+                    public void onComplete(MatchResult taskResponse) {
+                        synchronized (AsyncChecks.this) {
+                            isMatchInFlight = false;
+                            onCheckCompleted(taskResponse == null ? new EyesException("Failed performing match with the server") : null);
+                        }
+                        startNextMatch();
+                    }
+
+                    @Override
+                    public void onFail(Throwable t) {
+                        GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.MATCH_COMPLETE, t, testId);
+                        synchronized (AsyncChecks.this) {
+                            isMatchInFlight = false;
+                            onCheckCompleted(t);
+                        }
+                        startNextMatch();
+                    }
+                });
+                return;
+            }
+        }
+
+        private synchronized void onCheckCompleted(Throwable t) {
+            checks.removeFirst();
+            if (error == null && t != null) {
+                error = t;
+            }
+            inFlightPermits.release();
+        }
+
+        synchronized Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Waits until all the checks of the test are done
+         */
+        void waitForAll() {
+            try {
+                inFlightPermits.acquire(maxInFlight);
+                inFlightPermits.release(maxInFlight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EyesException("Interrupted while waiting for checks", e);
+            }
+        }
+    }
+
+    private static class AsyncCheck {
+        private final MatchWindowData matchWindowData;
+        private boolean isUploaded = false;
+        private Throwable error = null;
+
+        AsyncCheck(MatchWindowData matchWindowData) {
+            this.matchWindowData = matchWindowData;
+        }
+    }
+
     private final OpenService openService;
     private final CheckService checkService;
     private final CloseService closeService;
     private final List<TestResultContainer> allTestResult = new ArrayList<>();
+    private final ConcurrentHashMap<String, AsyncChecks> asyncChecks = new ConcurrentHashMap<>();
+    private volatile boolean isAsyncCheck = false;
+    private volatile int maxChecksInFlightPerTest = DEFAULT_MAX_CHECKS_IN_FLIGHT_PER_TEST;
 
     public ClassicRunner() {
         openService = new OpenService(logger, serverConnector, 1);
@@ -50,6 +187,32 @@ public class ClassicRunner extends EyesRunner {
         closeService.setServerConnector(serverConnector);
     }
 
+    /**
+     * Enables asynchronous checks. A check returns as soon as the screenshot is captured, while the screenshot
+     * is uploaded and matched in the background. Mismatches and failures are reported when the test is closed.
+     * Since the match result isn't known when the check returns, checks aren't retried until the match timeout.
+     */
+    public void setAsyncCheck(boolean isAsyncCheck) {
+        this.isAsyncCheck = isAsyncCheck;
+    }
+
+    public boolean isAsyncCheck() {
+        return isAsyncCheck;
+    }
+
+    /**
+     * Sets the maximum amount of asynchronous checks of a single test which can run in the background.
+     * When the limit is reached, a check waits for the oldest check to complete.
+     */
+    public void setMaxChecksInFlightPerTest(int maxChecksInFlightPerTest) {
+        ArgumentGuard.greaterThanZero(maxChecksInFlightPerTest, "maxChecksInFlightPerTest");
+        this.maxChecksInFlightPerTest = maxChecksInFlightPerTest;
+    }
+
+    public int getMaxChecksInFlightPerTest() {
+        return maxChecksInFlightPerTest;
+    }
+
     public RunningSession open(final String testId, SessionStartInfo sessionStartInfo) {
         final SyncTaskListener<RunningSession> listener = new SyncTaskListener<>(logger, String.format("openBase %s", sessionStartInfo));
         openService.operate(testId, sessionStartInfo, new ServiceTaskListener<RunningSession>() {
@@ -103,7 +266,34 @@ public class ClassicRunner extends EyesRunner {
         return matchListener.get();
     }
 
+    /**
+     * Starts a check in the background and returns without waiting for its result
+     */
+    public void checkAsync(final String testId, MatchWindowData matchWindowData) {
+        AsyncChecks checks = asyncChecks.get(testId);
+        if (checks == null) {
+            checks = new AsyncChecks(testId, maxChecksInFlightPerTest);
+            AsyncChecks existingChecks = asyncChecks.putIfAbsent(testId, checks);
+            if (existingChecks != null) {
+                checks = existingChecks;
+            }
+        }
+
+        // A previous check already failed, so the test would fail anyway
+        if (checks.getError() != null) {
+            throw new EyesException("Failed performing match with the server", checks.getError());
+        }
+
+        checks.add(matchWindowData);
+    }
+
     public TestResults close(final String testId, SessionStopInfo sessionStopInfo) {
+        // The session can only be stopped after all its matches are done
+        AsyncChecks checks = asyncChecks.remove(testId);
+        if (checks != null) {
+            checks.waitForAll();
+        }
+
         final SyncTaskListener<TestResults> listener = new SyncTaskListener<>(logger, String.format("stop session %s. isAborted: %b", sessionStopInfo.getRunningSession(), sessionStopInfo.isAborted()));
         closeService.operate(testId, sessionStopInfo, new ServiceTaskListener<TestResults>() {
             @Override
@@ -117,6 +307,10 @@ public class ClassicRunner extends EyesRunner {
                 listener.onFail();
             }
         });
-        return listener.get();
+        TestResults testResults = listener.get();
+        if (checks != null && checks.getError() != null && !sessionStopInfo.isAborted()) {
+            throw new EyesException("Failed performing match with the server", checks.getError());
+        }
+        return testResults;
     }
 }
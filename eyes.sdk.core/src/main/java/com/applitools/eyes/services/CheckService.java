@@ -6,6 +6,7 @@ import com.applitools.eyes.logging.Stage;
 import com.applitools.eyes.logging.TraceLevel;
 import com.applitools.eyes.logging.Type;
 import com.applitools.eyes.visualgrid.services.ServiceTaskListener;
+import com.applitools.utils.GeneralUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
@@ -13,51 +14,53 @@ import java.util.*;
 public class CheckService extends EyesService<MatchWindowData, MatchResult> {
 
     // Queue for tests that finished uploading and waiting for match window
-    private final List<Pair<String, MatchWindowData>> matchWindowQueue = Collections.synchronizedList(new ArrayList<Pair<String, MatchWindowData>>());
+    private final ServiceQueue<Pair<String, MatchWindowData>> matchWindowQueue = new ServiceQueue<>();
 
     private final Set<String> inUploadProcess = Collections.synchronizedSet(new HashSet<String>());
     private final Set<String> inMatchWindowProcess = Collections.synchronizedSet(new HashSet<String>());
 
+    // Screenshots with the same pixels are uploaded once for all the tests of the runner
+    private final UploadedScreenshotsCache uploadedScreenshotsCache = new UploadedScreenshotsCache();
+
     public CheckService(Logger logger, ServerConnector serverConnector) {
         super(logger, serverConnector);
     }
 
     @Override
     public void run() {
-        while (!inputQueue.isEmpty()) {
-            final Pair<String, MatchWindowData> nextInput = inputQueue.remove(0);
+        for (final Pair<String, MatchWindowData> nextInput : inputQueue.drain()) {
             final MatchWindowData matchWindowData = nextInput.getRight();
             inUploadProcess.add(nextInput.getLeft());
             tryUploadImage(nextInput.getLeft(), matchWindowData, new ServiceTaskListener<Void>() {
                 @Override
                 public void onComplete(Void output) {
                     inUploadProcess.remove(nextInput.getLeft());
-                    matchWindowQueue.add(Pair.of(nextInput.getLeft(), matchWindowData));
+                    matchWindowQueue.offer(Pair.of(nextInput.getLeft(), matchWindowData));
+                    notifyTaskCompleted();
                 }
 
                 @Override
                 public void onFail(Throwable t) {
                     inUploadProcess.remove(nextInput.getLeft());
-                    errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                    addError(nextInput.getLeft(), t);
                 }
             });
         }
 
-        while (!matchWindowQueue.isEmpty()) {
-            final Pair<String, MatchWindowData> nextInput = matchWindowQueue.remove(0);
+        for (final Pair<String, MatchWindowData> nextInput : matchWindowQueue.drain()) {
             final MatchWindowData matchWindowData = nextInput.getRight();
             inMatchWindowProcess.add(nextInput.getLeft());
             ServiceTaskListener<MatchResult> listener = new ServiceTaskListener<MatchResult>() {
                 @Override
                 public void onComplete(MatchResult taskResponse) {
                     inMatchWindowProcess.remove(nextInput.getLeft());
-                    outputQueue.add(Pair.of(nextInput.getLeft(), taskResponse));
+                    addOutput(nextInput.getLeft(), taskResponse);
                 }
 
                 @Override
                 public void onFail(Throwable t) {
                     inMatchWindowProcess.remove(nextInput.getLeft());
-                    errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                    addError(nextInput.getLeft(), t);
                 }
             };
 
@@ -72,6 +75,18 @@ public class CheckService extends EyesService<MatchWindowData, MatchResult> {
             return;
         }
 
+        final String screenshotHash = getScreenshotHash(testId, appOutput);
+        if (screenshotHash != null) {
+            String cachedUrl = uploadedScreenshotsCache.get(screenshotHash);
+            if (cachedUrl != null) {
+                logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.UPLOAD_COMPLETE,
+                        Pair.of("url", cachedUrl), Pair.of("screenshotHash", screenshotHash));
+                appOutput.setScreenshotUrl(cachedUrl);
+                taskListener.onComplete(null);
+                return;
+            }
+        }
+
         // Getting the screenshot bytes
         TaskListener<String> uploadListener = new TaskListener<String>() {
             @Override
@@ -82,6 +97,9 @@ public class CheckService extends EyesService<MatchWindowData, MatchResult> {
                 }
 
                 logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.UPLOAD_COMPLETE, Pair.of("url", s));
+                if (screenshotHash != null) {
+                    uploadedScreenshotsCache.put(screenshotHash, s);
+                }
                 appOutput.setScreenshotUrl(s);
                 taskListener.onComplete(null);
             }
@@ -101,6 +119,23 @@ public class CheckService extends EyesService<MatchWindowData, MatchResult> {
         }
     }
 
+    /**
+     * @return The hash by which the upload of the screenshot is shared, or null if it can't be shared
+     */
+    private String getScreenshotHash(String testId, AppOutput appOutput) {
+        // A delta compressed screenshot depends on the previous image of its session, so its upload isn't shared
+        if (appOutput.isScreenshotCompressed()) {
+            return null;
+        }
+
+        try {
+            return appOutput.getScreenshotHash();
+        } catch (Throwable t) {
+            GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.UPLOAD_START, t, testId);
+            return null;
+        }
+    }
+
     public void matchWindow(final String testId, MatchWindowData data, final ServiceTaskListener<MatchResult> listener) {
         try {
             logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.MATCH_START, Pair.of("matchWindowData", data));
@@ -20,20 +20,19 @@ public class CloseService extends EyesService<SessionStopInfo, TestResults> {
 
     @Override
     public void run() {
-        while (!inputQueue.isEmpty()) {
-            final Pair<String, SessionStopInfo> nextInput = inputQueue.remove(0);
+        for (final Pair<String, SessionStopInfo> nextInput : inputQueue.drain()) {
             inProgressTests.add(nextInput.getLeft());
             operate(nextInput.getLeft(), nextInput.getRight(), new ServiceTaskListener<TestResults>() {
                 @Override
                 public void onComplete(TestResults output) {
                     inProgressTests.remove(nextInput.getLeft());
-                    outputQueue.add(Pair.of(nextInput.getLeft(), output));
+                    addOutput(nextInput.getLeft(), output);
                 }
 
                 @Override
                 public void onFail(Throwable t) {
                     inProgressTests.remove(nextInput.getLeft());
-                    errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                    addError(nextInput.getLeft(), t);
                 }
             });
         }
@@ -1,20 +1,28 @@
 package com.applitools.eyes.services;
 
 import com.applitools.connectivity.ServerConnector;
+import com.applitools.eyes.EyesException;
 import com.applitools.eyes.Logger;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class EyesService<INPUT, OUTPUT> {
+    static final int DEFAULT_INPUT_QUEUE_CAPACITY = 10000;
+
     protected Logger logger;
     protected ServerConnector serverConnector;
 
-    protected final List<Pair<String, INPUT>> inputQueue = new ArrayList<>();
-    protected final List<Pair<String, OUTPUT>> outputQueue = Collections.synchronizedList(new ArrayList<Pair<String, OUTPUT>>());
-    protected final List<Pair<String, Throwable>> errorQueue = Collections.synchronizedList(new ArrayList<Pair<String, Throwable>>());
+    protected final ServiceQueue<Pair<String, INPUT>> inputQueue = new ServiceQueue<>(DEFAULT_INPUT_QUEUE_CAPACITY);
+
+    // Results are never dropped, so the output queues aren't bounded. Their depth is monitored instead.
+    protected final ServiceQueue<Pair<String, OUTPUT>> outputQueue = new ServiceQueue<>();
+    protected final ServiceQueue<Pair<String, Throwable>> errorQueue = new ServiceQueue<>();
+
+    // Notified whenever a task of this service finished, so the service runner doesn't have to poll
+    private volatile Runnable taskCompletedListener;
 
     public EyesService(Logger logger, ServerConnector serverConnector) {
         this.logger = logger;
@@ -30,25 +38,69 @@ public abstract class EyesService<INPUT, OUTPUT> {
         this.serverConnector = serverConnector;
     }
 
+    public void setTaskCompletedListener(Runnable taskCompletedListener) {
+        this.taskCompletedListener = taskCompletedListener;
+    }
+
     public abstract void run();
 
+    /**
+     * @return true if the service has work in progress which can only advance by calling {@link #run()} again
+     */
+    public boolean isPollingRequired() {
+        return false;
+    }
+
+    protected void addOutput(String id, OUTPUT output) {
+        outputQueue.offer(Pair.of(id, output));
+        notifyTaskCompleted();
+    }
+
+    protected void addError(String id, Throwable t) {
+        errorQueue.offer(Pair.<String, Throwable>of(id, t));
+        notifyTaskCompleted();
+    }
+
+    protected void notifyTaskCompleted() {
+        Runnable listener = taskCompletedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Adds a new task from the test thread. Fails fast if the service has too many pending tasks.
+     */
     public void addInput(String id, INPUT input) {
+        if (!inputQueue.offer(Pair.of(id, input))) {
+            throw new EyesException(String.format("%s input queue is full. Capacity: %d",
+                    getClass().getSimpleName(), inputQueue.getCapacity()));
+        }
+    }
+
+    /**
+     * Hands off a task from another service. It was already accepted by the runner, so it's never rejected.
+     */
+    void addInternalInput(String id, INPUT input) {
         inputQueue.add(Pair.of(id, input));
     }
 
     public List<Pair<String, OUTPUT>> getSucceededTasks() {
-        synchronized (outputQueue) {
-            List<Pair<String, OUTPUT>> succeededTasks = new ArrayList<>(outputQueue);
-            outputQueue.clear();
-            return succeededTasks;
-        }
+        return outputQueue.drain();
     }
 
     public List<Pair<String, Throwable>> getFailedTasks() {
-        synchronized (errorQueue) {
-            List<Pair<String, Throwable>> failedTasks = new ArrayList<>(errorQueue);
-            errorQueue.clear();
-            return failedTasks;
-        }
+        return errorQueue.drain();
+    }
+
+    /**
+     * @return the current statistics of the input, output and error queues of the service
+     */
+    public Map<String, ServiceQueue.Statistics> getQueuesStatistics() {
+        Map<String, ServiceQueue.Statistics> statistics = new HashMap<>();
+        statistics.put("input", inputQueue.getStatistics());
+        statistics.put("output", outputQueue.getStatistics());
+        statistics.put("error", errorQueue.getStatistics());
+        return statistics;
     }
 }
@@ -6,11 +6,12 @@ import com.applitools.eyes.*;
 import com.applitools.eyes.logging.Stage;
 import com.applitools.eyes.visualgrid.model.*;
 import com.applitools.eyes.visualgrid.services.CheckTask;
-import com.applitools.eyes.visualgrid.services.IEyes;
+import com.applitools.eyes.visualgrid.services.RunningTestListener;
 import com.applitools.eyes.visualgrid.services.VisualGridRunningTest;
 import com.applitools.utils.GeneralUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -18,13 +19,38 @@ public class EyesServiceRunner extends Thread {
     private static final String FULLPAGE = "full-page";
     private static final String VIEWPORT = "viewport";
 
+    // Interval for re-running services which can only advance by polling, like the dom analyzers
+    static final int POLLING_INTERVAL_MS = 10;
+
     private final AtomicBoolean isRunning = new AtomicBoolean(true);
     private Throwable error = null;
 
+    // The runner parks on this lock while there is no work, and services wake it up when they have output
+    private final Object wakeUpLock = new Object();
+    private boolean isWakeUpRequested = false;
+    private final Runnable wakeUpListener = new Runnable() {
+        @Override
+        public void run() {
+            wakeUp();
+        }
+    };
+
+    // Tests are queued when they become ready to close instead of scanning all the tests on every iteration
+    private final ServiceQueue<RunningTest> testsReadyToClose = new ServiceQueue<>();
+    private final RunningTestListener runningTestListener = new RunningTestListener() {
+        @Override
+        public void onStateChanged(VisualGridRunningTest runningTest) {
+            if (runningTest.isTestReadyToClose()) {
+                testsReadyToClose.offer(runningTest);
+                wakeUp();
+            }
+        }
+    };
+
     private Logger logger;
     private RenderingInfo renderingInfo;
 
-    private final Set<IEyes> allEyes;
+    private final Map<String, RunningTest> runningTests;
     private final Map<String, Pair<FrameData, List<CheckTask>>> resourceCollectionTasksMapping = new HashMap<>();
     private final List<RenderRequest> waitingRenderRequests = new ArrayList<>();
     private final Map<String, CheckTask> waitingCheckTasks = new HashMap<>();
@@ -35,16 +61,29 @@ public class EyesServiceRunner extends Thread {
     private final ResourceCollectionService resourceCollectionService;
     private final RenderService renderService;
 
-    public EyesServiceRunner(Logger logger, ServerConnector serverConnector, Set<IEyes> allEyes, int testConcurrency,
-                             IDebugResourceWriter debugResourceWriter, Map<String, RGridResource> resourcesCacheMap) {
+    /**
+     * @param runningTests A concurrent index of the tests by their test id. The caller adds the tests,
+     *                     and they are removed once their close completed, so finished tests aren't kept.
+     */
+    public EyesServiceRunner(Logger logger, ServerConnector serverConnector, Map<String, RunningTest> runningTests, int testConcurrency,
+                             IDebugResourceWriter debugResourceWriter, ResourcesCache resourcesCacheMap) {
         this.logger = logger;
-        this.allEyes = allEyes;
+        this.runningTests = runningTests;
 
         openService = new OpenService(logger, serverConnector, testConcurrency);
         checkService = new CheckService(logger, serverConnector);
         closeService = new CloseService(logger, serverConnector);
         resourceCollectionService = new ResourceCollectionService(logger, serverConnector, debugResourceWriter, resourcesCacheMap);
         renderService = new RenderService(logger, serverConnector);
+
+        // Only the content of resources which exist on the server can be dropped from the cache
+        resourcesCacheMap.setUploadStatusProvider(resourceCollectionService);
+
+        openService.setTaskCompletedListener(wakeUpListener);
+        checkService.setTaskCompletedListener(wakeUpListener);
+        closeService.setTaskCompletedListener(wakeUpListener);
+        resourceCollectionService.setTaskCompletedListener(wakeUpListener);
+        renderService.setTaskCompletedListener(wakeUpListener);
     }
 
     public void setRenderingInfo(RenderingInfo renderingInfo) {
@@ -57,6 +96,14 @@ public class EyesServiceRunner extends Thread {
         resourceCollectionService.setDebugResourceWriter(debugResourceWriter);
     }
 
+    public void setResourceCacheDirectory(File resourceCacheDirectory) {
+        resourceCollectionService.setDiskCacheDirectory(resourceCacheDirectory);
+    }
+
+    public void setResourceUploadConcurrency(int resourceUploadConcurrency) {
+        resourceCollectionService.setUploadConcurrency(resourceUploadConcurrency);
+    }
+
     public void setLogger(Logger logger) {
         openService.setLogger(logger);
         checkService.setLogger(logger);
@@ -76,8 +123,10 @@ public class EyesServiceRunner extends Thread {
 
     public void openTests(Collection<VisualGridRunningTest> runningTests) {
         for (VisualGridRunningTest runningTest : runningTests) {
+            runningTest.setRunningTestListener(runningTestListener);
             openService.addInput(runningTest.getTestId(), runningTest.prepareForOpen());
         }
+        wakeUp();
     }
 
     public void addResourceCollectionTask(FrameData domData, List<CheckTask> checkTasks) {
@@ -89,21 +138,36 @@ public class EyesServiceRunner extends Thread {
         domData.setTestIds(testIds);
         resourceCollectionService.addInput(resourceCollectionTaskId, domData);
         resourceCollectionTasksMapping.put(resourceCollectionTaskId, Pair.of(domData, checkTasks));
+        wakeUp();
+    }
+
+    /**
+     * Makes the runner run another iteration of all services as soon as possible
+     */
+    public void wakeUp() {
+        synchronized (wakeUpLock) {
+            isWakeUpRequested = true;
+            wakeUpLock.notifyAll();
+        }
     }
 
     @Override
     public void run() {
         try {
             while (isRunning.get()) {
-                openServiceIteration();
-                resourceCollectionServiceIteration();
-                renderServiceIteration();
-                checkServiceIteration();
-                closeServiceIteration();
-
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ignored) {}
+                synchronized (wakeUpLock) {
+                    isWakeUpRequested = false;
+                }
+
+                // Handling outputs can make other tests ready for the next stage, so we iterate again before parking
+                boolean hasHandledTasks = openServiceIteration();
+                hasHandledTasks = resourceCollectionServiceIteration() || hasHandledTasks;
+                hasHandledTasks = renderServiceIteration() || hasHandledTasks;
+                hasHandledTasks = checkServiceIteration() || hasHandledTasks;
+                hasHandledTasks = closeServiceIteration() || hasHandledTasks;
+                if (!hasHandledTasks) {
+                    waitForWork();
+                }
             }
         } catch (Throwable e) {
             isRunning.set(false);
@@ -116,23 +180,59 @@ public class EyesServiceRunner extends Thread {
         return error;
     }
 
+    /**
+     * @return the queues statistics of every service, for monitoring backpressure
+     */
+    public Map<String, Map<String, ServiceQueue.Statistics>> getQueuesStatistics() {
+        Map<String, Map<String, ServiceQueue.Statistics>> statistics = new HashMap<>();
+        statistics.put("open", openService.getQueuesStatistics());
+        statistics.put("resourceCollection", resourceCollectionService.getQueuesStatistics());
+        statistics.put("render", renderService.getQueuesStatistics());
+        statistics.put("check", checkService.getQueuesStatistics());
+        statistics.put("close", closeService.getQueuesStatistics());
+        return statistics;
+    }
+
+    public RenderStatistics getRenderStatistics() {
+        return renderService.getRenderStatistics();
+    }
+
     public void stopServices() {
         isRunning.set(false);
+        wakeUp();
     }
 
-    private void openServiceIteration() {
+    private void waitForWork() {
+        boolean isPollingRequired = resourceCollectionService.isPollingRequired();
+        synchronized (wakeUpLock) {
+            if (isWakeUpRequested || !isRunning.get()) {
+                return;
+            }
+
+            try {
+                // Without any polling service there is nothing to do until someone wakes the runner up
+                wakeUpLock.wait(isPollingRequired ? POLLING_INTERVAL_MS : 0);
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    private boolean openServiceIteration() {
         openService.run();
-        for (Pair<String, RunningSession> pair : openService.getSucceededTasks()) {
+        List<Pair<String, RunningSession>> succeededTasks = openService.getSucceededTasks();
+        for (Pair<String, RunningSession> pair : succeededTasks) {
             findTestById(pair.getLeft()).openCompleted(pair.getRight());
         }
-        for (Pair<String, Throwable> pair : openService.getFailedTasks()) {
+        List<Pair<String, Throwable>> failedTasks = openService.getFailedTasks();
+        for (Pair<String, Throwable> pair : failedTasks) {
             findTestById(pair.getLeft()).openFailed(pair.getRight());
         }
+        return !succeededTasks.isEmpty() || !failedTasks.isEmpty();
     }
 
-    private void checkServiceIteration() {
+    private boolean checkServiceIteration() {
         checkService.run();
-        for (Pair<String, MatchResult> pair : checkService.getSucceededTasks()) {
+        List<Pair<String, MatchResult>> succeededTasks = checkService.getSucceededTasks();
+        for (Pair<String, MatchResult> pair : succeededTasks) {
             CheckTask checkTask = waitingCheckTasks.remove(pair.getLeft());
             if (!checkTask.isTestActive()) {
                 continue;
@@ -141,54 +241,64 @@ public class EyesServiceRunner extends Thread {
             checkTask.onComplete(pair.getRight());
         }
 
-        for (Pair<String, Throwable> pair : checkService.getFailedTasks()) {
+        List<Pair<String, Throwable>> failedTasks = checkService.getFailedTasks();
+        for (Pair<String, Throwable> pair : failedTasks) {
             CheckTask checkTask = waitingCheckTasks.remove(pair.getLeft());
             checkTask.onFail(pair.getRight());
         }
+        return !succeededTasks.isEmpty() || !failedTasks.isEmpty();
     }
 
-    private void closeServiceIteration() {
-        // Check if tests are ready to be closed
-        synchronized (allEyes) {
-            for (IEyes eyes : allEyes) {
-                for (RunningTest runningTest : eyes.getAllRunningTests().values()) {
-                    if (runningTest.isTestReadyToClose()) {
-                        if (!runningTest.getIsOpen()) {
-                            // If the test isn't open and is ready to close, it means the open failed
-                            openService.decrementConcurrency();
-                            runningTest.closeFailed(new EyesException("Eyes never opened"));
-                            continue;
-                        }
-
-                        SessionStopInfo sessionStopInfo = runningTest.prepareStopSession(runningTest.isTestAborted());
-                        closeService.addInput(runningTest.getTestId(), sessionStopInfo);
-                    }
-                }
+    private boolean closeServiceIteration() {
+        boolean hasHandledTasks = false;
+        for (RunningTest runningTest : testsReadyToClose.drain()) {
+            // A test can be queued more than once, so we make sure it still waits to be closed
+            if (!runningTest.isTestReadyToClose()) {
+                continue;
+            }
+
+            hasHandledTasks = true;
+            if (!runningTest.getIsOpen()) {
+                // If the test isn't open and is ready to close, it means the open failed
+                openService.decrementConcurrency();
+                runningTest.closeFailed(new EyesException("Eyes never opened"));
+                runningTests.remove(runningTest.getTestId());
+                continue;
             }
+
+            SessionStopInfo sessionStopInfo = runningTest.prepareStopSession(runningTest.isTestAborted());
+            closeService.addInternalInput(runningTest.getTestId(), sessionStopInfo);
         }
 
         closeService.run();
-        for (Pair<String, TestResults> pair : closeService.getSucceededTasks()) {
+        List<Pair<String, TestResults>> succeededTasks = closeService.getSucceededTasks();
+        for (Pair<String, TestResults> pair : succeededTasks) {
             RunningTest runningTest = findTestById(pair.getLeft());
             runningTest.closeCompleted(pair.getRight());
+            runningTests.remove(pair.getLeft());
             openService.decrementConcurrency();
         }
 
-        for (Pair<String, Throwable> pair : closeService.getFailedTasks()) {
+        List<Pair<String, Throwable>> failedTasks = closeService.getFailedTasks();
+        for (Pair<String, Throwable> pair : failedTasks) {
             RunningTest runningTest = findTestById(pair.getLeft());
             runningTest.closeFailed(pair.getRight());
+            runningTests.remove(pair.getLeft());
             openService.decrementConcurrency();
         }
+        return hasHandledTasks || !succeededTasks.isEmpty() || !failedTasks.isEmpty();
     }
 
-    private void resourceCollectionServiceIteration() {
+    private boolean resourceCollectionServiceIteration() {
         resourceCollectionService.run();
-        for (Pair<String, Map<String, RGridResource>> pair : resourceCollectionService.getSucceededTasks()) {
+        List<Pair<String, Map<String, RGridResource>>> succeededTasks = resourceCollectionService.getSucceededTasks();
+        for (Pair<String, Map<String, RGridResource>> pair : succeededTasks) {
             Pair<FrameData, List<CheckTask>> checkTasks = resourceCollectionTasksMapping.get(pair.getLeft());
             queueRenderRequests(checkTasks.getLeft(), pair.getRight(), checkTasks.getRight());
         }
 
-        for (Pair<String, Throwable> pair : resourceCollectionService.getFailedTasks()) {
+        List<Pair<String, Throwable>> failedTasks = resourceCollectionService.getFailedTasks();
+        for (Pair<String, Throwable> pair : failedTasks) {
             Pair<FrameData, List<CheckTask>> checkTasks = resourceCollectionTasksMapping.get(pair.getLeft());
             for (CheckTask checkTask : checkTasks.getRight()) {
                 checkTask.onFail(pair.getRight());
@@ -196,9 +306,10 @@ public class EyesServiceRunner extends Thread {
 
             resourceCollectionTasksMapping.remove(pair.getLeft());
         }
+        return !succeededTasks.isEmpty() || !failedTasks.isEmpty();
     }
 
-    private void renderServiceIteration() {
+    private boolean renderServiceIteration() {
         // Check if render requests are ready to start
         List<RenderRequest> renderRequestsToRemove = new ArrayList<>();
         for (RenderRequest renderRequest : waitingRenderRequests) {
@@ -210,7 +321,7 @@ public class EyesServiceRunner extends Thread {
             }
 
             if (checkTask.isReadyForRender()) {
-                renderService.addInput(checkTask.getStepId(), renderRequest);
+                renderService.addInternalInput(checkTask.getStepId(), renderRequest);
                 renderRequestsToRemove.add(renderRequest);
             }
         }
@@ -218,7 +329,8 @@ public class EyesServiceRunner extends Thread {
         waitingRenderRequests.removeAll(renderRequestsToRemove);
 
         renderService.run();
-        for (Pair<String, RenderStatusResults> pair : renderService.getSucceededTasks()) {
+        List<Pair<String, RenderStatusResults>> succeededTasks = renderService.getSucceededTasks();
+        for (Pair<String, RenderStatusResults> pair : succeededTasks) {
             CheckTask checkTask = waitingCheckTasks.get(pair.getLeft());
             if (!checkTask.isTestActive()) {
                 waitingCheckTasks.remove(pair.getLeft());
@@ -227,25 +339,23 @@ public class EyesServiceRunner extends Thread {
 
             checkTask.setRenderStatusResults(pair.getRight());
             MatchWindowData matchWindowData = findTestById(checkTask.getTestId()).prepareForMatch(checkTask);
-            checkService.addInput(checkTask.getStepId(), matchWindowData);
+            checkService.addInternalInput(checkTask.getStepId(), matchWindowData);
         }
 
-        for (Pair<String, Throwable> pair : renderService.getFailedTasks()) {
+        List<Pair<String, Throwable>> failedTasks = renderService.getFailedTasks();
+        for (Pair<String, Throwable> pair : failedTasks) {
             CheckTask checkTask = waitingCheckTasks.remove(pair.getLeft());
             checkTask.onFail(pair.getRight());
         }
+        return !renderRequestsToRemove.isEmpty() || !succeededTasks.isEmpty() || !failedTasks.isEmpty();
     }
 
     private RunningTest findTestById(String testId) {
-        synchronized (allEyes) {
-            for (IEyes eyes : allEyes) {
-                if (eyes.getAllRunningTests().containsKey(testId)) {
-                    return eyes.getAllRunningTests().get(testId);
-                }
-            }
+        RunningTest runningTest = runningTests.get(testId);
+        if (runningTest == null) {
+            throw new IllegalStateException(String.format("Didn't find test id %s", testId));
         }
-
-        throw new IllegalStateException(String.format("Didn't find test id %s", testId));
+        return runningTest;
     }
 
     private void queueRenderRequests(FrameData result, Map<String, RGridResource> resourceMapping, List<CheckTask> checkTasks) {
@@ -278,7 +388,7 @@ public class EyesServiceRunner extends Thread {
 
             waitingCheckTasks.put(checkTask.getStepId(), checkTask);
             if (checkTask.isReadyForRender()) {
-                renderService.addInput(checkTask.getStepId(), request);
+                renderService.addInternalInput(checkTask.getStepId(), request);
             } else {
                 waitingRenderRequests.add(request);
             }
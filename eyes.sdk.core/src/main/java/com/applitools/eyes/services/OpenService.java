@@ -33,19 +33,19 @@ public class OpenService extends EyesService<SessionStartInfo, RunningSession> {
             currentTestAmount.incrementAndGet();
             logger.log(TraceLevel.Info, new HashSet<String>(), Stage.OPEN, null, Pair.of("testAmount", currentTestAmount.get()));
 
-            final Pair<String, SessionStartInfo> nextInput = inputQueue.remove(0);
+            final Pair<String, SessionStartInfo> nextInput = inputQueue.poll();
             inProgressTests.add(nextInput.getLeft());
             operate(nextInput.getLeft(), nextInput.getRight(), new ServiceTaskListener<RunningSession>() {
                 @Override
                 public void onComplete(RunningSession output) {
                     inProgressTests.remove(nextInput.getLeft());
-                    outputQueue.add(Pair.of(nextInput.getLeft(), output));
+                    addOutput(nextInput.getLeft(), output);
                 }
 
                 @Override
                 public void onFail(Throwable t) {
                     inProgressTests.remove(nextInput.getLeft());
-                    errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                    addError(nextInput.getLeft(), t);
                 }
             });
         }
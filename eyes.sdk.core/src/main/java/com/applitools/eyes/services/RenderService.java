@@ -14,24 +14,73 @@ import com.applitools.eyes.visualgrid.model.RunningRender;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.*;
 
 public class RenderService extends EyesService<RenderRequest, RenderStatusResults> {
     int RENDER_STATUS_POLLING_TIMEOUT = 60 * 60 * 1000;
-
-    private final AtomicBoolean isTimeElapsed = new AtomicBoolean(false);
+    int INITIAL_POLLING_INTERVAL = 500;
+    int MAX_POLLING_INTERVAL = 5000;
+    static final double POLLING_BACKOFF_FACTOR = 1.5;
+    static final double POLLING_JITTER = 0.2;
+    static final int MAX_RENDERS_PER_STATUS_REQUEST = 50;
+
+    // A single thread shared by all the render services, which only wakes up the runners when polling is due
+    private static final ScheduledExecutorService pollingScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "VG_RenderStatusScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     // Queue for tests that are in a render process
-    private final List<Pair<String, String>> renderingQueue = Collections.synchronizedList(new ArrayList<Pair<String, String>>());
+    private final ServiceQueue<Pair<String, String>> renderingQueue = new ServiceQueue<>();
+
+    /**
+     * A render which its status is being polled
+     */
+    private class PendingRender {
+        private final String testId;
+        private final String renderId;
+        private final long startTime;
+        private long nextPollTime;
+        private long pollingInterval = INITIAL_POLLING_INTERVAL;
+        private int pollsCount = 0;
+        private boolean isDone = false;
+
+        PendingRender(String testId, String renderId, long startTime) {
+            this.testId = testId;
+            this.renderId = renderId;
+            this.startTime = startTime;
+            this.nextPollTime = startTime;
+        }
 
-    private class TimeoutTask extends TimerTask {
-        @Override
-        public void run() {
-            logger.log(TraceLevel.Error, new HashSet<String>(), Stage.RENDER, Type.TIMEOUT);
-            isTimeElapsed.set(true);
+        /**
+         * Schedules the next poll, backing off as the render takes longer
+         */
+        void scheduleNextPoll(long now) {
+            double jitter = 1 + POLLING_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            nextPollTime = now + (long) (pollingInterval * jitter);
+            pollingInterval = Math.min((long) (pollingInterval * POLLING_BACKOFF_FACTOR), MAX_POLLING_INTERVAL);
         }
     }
 
+    // All the renders which aren't done yet, ordered by their start time, and therefore by their timeout
+    private final LinkedHashMap<String, PendingRender> activeRenders = new LinkedHashMap<>();
+
+    // Renders which wait for their next poll. Renders with a status request in flight aren't in the queue.
+    private final PriorityQueue<PendingRender> pollingQueue = new PriorityQueue<>(11, new Comparator<PendingRender>() {
+        @Override
+        public int compare(PendingRender r1, PendingRender r2) {
+            return Long.compare(r1.nextPollTime, r2.nextPollTime);
+        }
+    });
+
+    private ScheduledFuture<?> wakeUpFuture;
+    private long wakeUpTime;
+    private final RenderStatistics renderStatistics = new RenderStatistics();
+
     public RenderService(Logger logger, ServerConnector serverConnector) {
         super(logger, serverConnector);
     }
@@ -40,43 +89,68 @@ public class RenderService extends EyesService<RenderRequest, RenderStatusResult
     public void run() {
         sendAllRenderRequests();
 
-        if (renderingQueue.isEmpty()) {
-            return;
-        }
+        long now = System.currentTimeMillis();
+        List<PendingRender> timedOutRenders = new ArrayList<>();
+        List<List<PendingRender>> batches = new ArrayList<>();
+        synchronized (activeRenders) {
+            for (Pair<String, String> pair : renderingQueue.drain()) {
+                PendingRender render = new PendingRender(pair.getLeft(), pair.getRight(), now);
+                activeRenders.put(render.renderId, render);
+                pollingQueue.add(render);
+            }
+
+            // The renders are ordered by their timeout, so only the oldest renders are checked
+            Iterator<PendingRender> iterator = activeRenders.values().iterator();
+            while (iterator.hasNext()) {
+                PendingRender render = iterator.next();
+                if (now - render.startTime < RENDER_STATUS_POLLING_TIMEOUT) {
+                    break;
+                }
+
+                render.isDone = true;
+                iterator.remove();
+                pollingQueue.remove(render);
+                timedOutRenders.add(render);
+            }
+
+            List<PendingRender> batch = new ArrayList<>();
+            while (!pollingQueue.isEmpty() && pollingQueue.peek().nextPollTime <= now) {
+                batch.add(pollingQueue.poll());
+                if (batch.size() == MAX_RENDERS_PER_STATUS_REQUEST) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                }
+            }
 
-        List<Pair<String, String>> list;
-        synchronized (renderingQueue) {
-            list = new ArrayList<>(renderingQueue);
-            renderingQueue.clear();
+            if (!batch.isEmpty()) {
+                batches.add(batch);
+            }
         }
 
-        final List<String> testIds = new ArrayList<>();
-        final List<String> renderIds = new ArrayList<>();
-        for (Pair<String, String> pair : list) {
-            testIds.add(pair.getLeft());
-            renderIds.add(pair.getRight());
+        for (PendingRender render : timedOutRenders) {
+            logger.log(TraceLevel.Error, Collections.singleton(render.testId), Stage.RENDER, Type.TIMEOUT,
+                    Pair.of("renderId", render.renderId), Pair.of("pollsCount", render.pollsCount));
+            addError(render.testId, new EyesException(String.format("Render timeout. TestId: %s, RenderId: %s", render.testId, render.renderId)));
         }
 
-        try {
-            pollRenderingStatus(testIds, renderIds);
-        } catch (Throwable t) {
-            setRenderErrorToTasks(testIds, t);
+        for (List<PendingRender> batch : batches) {
+            pollRenderingStatus(batch);
         }
+
+        scheduleWakeUp();
     }
 
     private void sendAllRenderRequests() {
-        if (inputQueue.isEmpty()) {
+        List<Pair<String, RenderRequest>> inputs = inputQueue.drain();
+        if (inputs.isEmpty()) {
             return;
         }
 
         List<RenderRequest> renderRequests = new ArrayList<>();
         final List<String> testIds = new ArrayList<>();
-        synchronized (inputQueue) {
-            for (Pair<String, RenderRequest> stringRenderRequestPair : inputQueue) {
-                renderRequests.add(stringRenderRequestPair.getRight());
-                testIds.add(stringRenderRequestPair.getLeft());
-            }
-            inputQueue.clear();
+        for (Pair<String, RenderRequest> stringRenderRequestPair : inputs) {
+            renderRequests.add(stringRenderRequestPair.getRight());
+            testIds.add(stringRenderRequestPair.getLeft());
         }
 
         final TaskListener<List<RunningRender>> renderListener = new TaskListener<List<RunningRender>>() {
@@ -100,8 +174,9 @@ public class RenderService extends EyesService<RenderRequest, RenderStatusResult
                     }
 
                     for (int i = 0; i < runningRenders.size(); i++) {
-                        renderingQueue.add(Pair.of(testIds.get(i), runningRenders.get(i).getRenderId()));
+                        renderingQueue.offer(Pair.of(testIds.get(i), runningRenders.get(i).getRenderId()));
                     }
+                    notifyTaskCompleted();
                 } catch (Throwable t) {
                     setRenderErrorToTasks(testIds, t);
                 }
@@ -120,99 +195,149 @@ public class RenderService extends EyesService<RenderRequest, RenderStatusResult
         }
     }
 
-    private void pollRenderingStatus(final List<String> testIds, final List<String> renderIds) {
-        final Timer timer = new Timer("VG_StopWatch", true);
-        timer.schedule(new TimeoutTask(), RENDER_STATUS_POLLING_TIMEOUT);
-        serverConnector.renderStatusById(new TaskListener<List<RenderStatusResults>>() {
+    private void pollRenderingStatus(final List<PendingRender> renders) {
+        final List<String> testIds = new ArrayList<>();
+        final List<String> renderIds = new ArrayList<>();
+        for (PendingRender render : renders) {
+            testIds.add(render.testId);
+            renderIds.add(render.renderId);
+        }
+
+        TaskListener<List<RenderStatusResults>> listener = new TaskListener<List<RenderStatusResults>>() {
             @Override
             public void onComplete(List<RenderStatusResults> renderStatusResultsList) {
-                if (renderStatusResultsList == null || renderStatusResultsList.size() != renderIds.size()) {
+                if (renderStatusResultsList == null || renderStatusResultsList.size() != renders.size()) {
                     onFail();
                     return;
                 }
 
-                for (int i = 0; i < renderStatusResultsList.size(); i++) {
+                long now = System.currentTimeMillis();
+                List<PendingRender> stillRendering = new ArrayList<>();
+                for (int i = 0; i < renders.size(); i++) {
+                    PendingRender render = renders.get(i);
                     RenderStatusResults renderStatusResults = renderStatusResultsList.get(i);
                     if (renderStatusResults == null) {
-                        renderStatusResults = RenderStatusResults.createError(renderIds.get(i));
+                        renderStatusResults = RenderStatusResults.createError(render.renderId);
                     }
 
-                    logger.log(TraceLevel.Info, Collections.singleton(testIds.get(i)), Stage.RENDER, Type.RENDER_STATUS,
+                    logger.log(TraceLevel.Info, Collections.singleton(render.testId), Stage.RENDER, Type.RENDER_STATUS,
                             Pair.of("renderStatusResults", renderStatusResults));
                     RenderStatus renderStatus = renderStatusResults.getStatus();
                     if (!renderStatus.equals(RenderStatus.RENDERED) && !renderStatus.equals(RenderStatus.ERROR)) {
+                        stillRendering.add(render);
+                        continue;
+                    }
+
+                    if (!completeRender(render, now)) {
                         continue;
                     }
 
-                    String testId = testIds.get(i);
                     String error = renderStatusResults.getError();
                     if (error != null) {
-                        synchronized (errorQueue) {
-                            Throwable t = new EyesException(error);
-                            errorQueue.add(Pair.of(testId, t));
-                        }
+                        addError(render.testId, new EyesException(error));
                     } else {
-                        synchronized (outputQueue) {
-                            outputQueue.add(Pair.of(testId, renderStatusResults));
-                        }
+                        addOutput(render.testId, renderStatusResults);
                     }
-
-                    renderIds.remove(i);
-                    testIds.remove(i);
-                    renderStatusResultsList.remove(i);
-                    i--;
                 }
 
-                if (renderIds.isEmpty()) {
-                    timer.cancel();
-                    return;
-                }
+                schedulePolls(stillRendering, now);
+            }
 
-                try {
-                    Thread.sleep(1500);
-                } catch (InterruptedException ignored) {}
+            @Override
+            public void onFail() {
+                // Failed requests are retried with the same backoff until the renders time out
+                schedulePolls(renders, System.currentTimeMillis());
+            }
+        };
 
-                if (!isTimeElapsed.get()) {
-                    serverConnector.renderStatusById(this, testIds, renderIds);
-                    return;
+        try {
+            serverConnector.renderStatusById(listener, testIds, renderIds);
+        } catch (Throwable t) {
+            long now = System.currentTimeMillis();
+            for (PendingRender render : renders) {
+                if (completeRender(render, now)) {
+                    addError(render.testId, t);
                 }
+            }
+        }
+    }
 
-                onFail();
+    /**
+     * @return false if the render was already completed, for instance if it timed out while its status was polled
+     */
+    private boolean completeRender(PendingRender render, long now) {
+        synchronized (activeRenders) {
+            render.pollsCount++;
+            if (render.isDone) {
+                return false;
             }
 
-            @Override
-            public void onFail() {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ignored) {}
+            render.isDone = true;
+            activeRenders.remove(render.renderId);
+        }
 
-                if (!renderIds.isEmpty() && !isTimeElapsed.get()) {
-                    serverConnector.renderStatusById(this, testIds, renderIds);
-                    return;
+        renderStatistics.addRender(render.pollsCount, now - render.startTime);
+        return true;
+    }
+
+    private void schedulePolls(List<PendingRender> renders, long now) {
+        if (renders.isEmpty()) {
+            return;
+        }
+
+        synchronized (activeRenders) {
+            for (PendingRender render : renders) {
+                render.pollsCount++;
+                if (render.isDone) {
+                    continue;
                 }
 
-                timer.cancel();
-                if (renderIds.isEmpty()) {
+                render.scheduleNextPoll(now);
+                pollingQueue.add(render);
+            }
+        }
+
+        scheduleWakeUp();
+    }
+
+    /**
+     * Makes sure the runner is woken up when the next poll or the next timeout is due
+     */
+    private void scheduleWakeUp() {
+        synchronized (activeRenders) {
+            if (activeRenders.isEmpty()) {
+                return;
+            }
+
+            long nextTime = activeRenders.values().iterator().next().startTime + RENDER_STATUS_POLLING_TIMEOUT;
+            if (!pollingQueue.isEmpty()) {
+                nextTime = Math.min(nextTime, pollingQueue.peek().nextPollTime);
+            }
+
+            if (wakeUpFuture != null && !wakeUpFuture.isDone()) {
+                if (wakeUpTime <= nextTime) {
                     return;
                 }
+                wakeUpFuture.cancel(false);
+            }
 
-                for (int i = 0; i < testIds.size(); i++) {
-                    String renderId = renderIds.get(i);
-                    String testId = testIds.get(i);
-                    Throwable t = new EyesException(String.format("Render timeout. TestId: %s, RenderId: %s", testId, renderId));
-                    synchronized (errorQueue) {
-                        errorQueue.add(Pair.of(testId, t));
-                    }
+            wakeUpTime = nextTime;
+            wakeUpFuture = pollingScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    notifyTaskCompleted();
                 }
-            }
-        }, testIds, renderIds);
+            }, Math.max(nextTime - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public RenderStatistics getRenderStatistics() {
+        return renderStatistics.copy();
     }
 
     private void setRenderErrorToTasks(List<String> testIds, Throwable t) {
-        synchronized (errorQueue) {
-            for (String id : testIds) {
-                errorQueue.add(Pair.of(id, t));
-            }
+        for (String id : testIds) {
+            addError(id, t);
         }
     }
 }
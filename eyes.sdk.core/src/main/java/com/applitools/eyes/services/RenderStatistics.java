@@ -0,0 +1,88 @@
+package com.applitools.eyes.services;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the completed renders: how many times their status was polled, and how long they took.
+ * The latency percentiles are calculated over the most recent renders only.
+ */
+public class RenderStatistics {
+    static final int MAX_LATENCY_SAMPLES = 1000;
+
+    private final long[] latencies;
+    private int latenciesCount = 0;
+    private int nextLatencyIndex = 0;
+    private long rendersCount = 0;
+    private long pollsCount = 0;
+    private int maxPolls = 0;
+
+    public RenderStatistics() {
+        this(new long[MAX_LATENCY_SAMPLES]);
+    }
+
+    private RenderStatistics(long[] latencies) {
+        this.latencies = latencies;
+    }
+
+    synchronized void addRender(int polls, long latencyMs) {
+        rendersCount++;
+        pollsCount += polls;
+        maxPolls = Math.max(maxPolls, polls);
+        latencies[nextLatencyIndex] = latencyMs;
+        nextLatencyIndex = (nextLatencyIndex + 1) % latencies.length;
+        latenciesCount = Math.min(latenciesCount + 1, latencies.length);
+    }
+
+    synchronized RenderStatistics copy() {
+        RenderStatistics statistics = new RenderStatistics(Arrays.copyOf(latencies, latencies.length));
+        statistics.latenciesCount = latenciesCount;
+        statistics.nextLatencyIndex = nextLatencyIndex;
+        statistics.rendersCount = rendersCount;
+        statistics.pollsCount = pollsCount;
+        statistics.maxPolls = maxPolls;
+        return statistics;
+    }
+
+    public synchronized long getRendersCount() {
+        return rendersCount;
+    }
+
+    public synchronized double getAveragePollsPerRender() {
+        return rendersCount == 0 ? 0 : (double) pollsCount / rendersCount;
+    }
+
+    public synchronized int getMaxPollsPerRender() {
+        return maxPolls;
+    }
+
+    /**
+     * @param percentile A percentile between 0 and 100
+     * @return The render latency in milliseconds at the given percentile, or 0 if there are no completed renders
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        if (latenciesCount == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, latenciesCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * latenciesCount) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    @Override
+    public String toString() {
+        return "RenderStatistics{" +
+                "rendersCount=" + getRendersCount() +
+                ", averagePollsPerRender=" + getAveragePollsPerRender() +
+                ", maxPollsPerRender=" + getMaxPollsPerRender() +
+                ", latencyP50=" + getLatencyPercentile(50) +
+                ", latencyP90=" + getLatencyPercentile(90) +
+                ", latencyP99=" + getLatencyPercentile(99) +
+                '}';
+    }
+}
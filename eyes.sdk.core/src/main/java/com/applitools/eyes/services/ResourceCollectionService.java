@@ -3,7 +3,6 @@ package com.applitools.eyes.services;
 import com.applitools.connectivity.ServerConnector;
 import com.applitools.eyes.EyesException;
 import com.applitools.eyes.Logger;
-import com.applitools.eyes.SyncTaskListener;
 import com.applitools.eyes.TaskListener;
 import com.applitools.eyes.logging.Stage;
 import com.applitools.eyes.logging.TraceLevel;
@@ -13,17 +12,227 @@ import com.applitools.eyes.visualgrid.services.ServiceTaskListener;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResourceCollectionService extends EyesService<FrameData, Map<String, RGridResource>>
+        implements ResourcesCache.UploadStatusProvider {
+    static final int DEFAULT_UPLOAD_CONCURRENCY = 20;
+
+    /**
+     * A single upload of a resource, shared by all the doms which are waiting for it
+     */
+    class ResourceUpload {
+        private final Set<String> testIds;
+        private final RGridResource resource;
+        private final List<ServiceTaskListener<Void>> listeners = new ArrayList<>();
+        private boolean isDone = false;
+        private Throwable error = null;
+
+        ResourceUpload(Set<String> testIds, RGridResource resource) {
+            this.testIds = testIds;
+            this.resource = resource;
+        }
+
+        synchronized boolean isUploaded() {
+            return isDone && error == null;
+        }
+
+        void addListener(ServiceTaskListener<Void> listener) {
+            synchronized (this) {
+                if (!isDone) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+
+            notifyListener(listener);
+        }
+
+        void start() {
+            TaskListener<Void> uploadListener = new TaskListener<Void>() {
+                @Override
+                public void onComplete(Void taskResponse) {
+                    UploadedResourcesDiskCache diskCache = getUploadedResourcesDiskCache();
+                    if (diskCache != null) {
+                        diskCache.add(resource.getSha256());
+                    }
+                    onUploadFinished(null);
+                }
+
+                @Override
+                public void onFail() {
+                    onUploadFinished(new EyesException(String.format("Failed uploading resource %s %s", resource.getSha256(), resource.getUrl())));
+                }
+            };
+
+            try {
+                serverConnector.renderPutResource(testIds, "NONE", resource, uploadListener);
+            } catch (Throwable t) {
+                onUploadFinished(t);
+            }
+        }
+
+        private void onUploadFinished(Throwable t) {
+            List<ServiceTaskListener<Void>> listenersToNotify;
+            synchronized (this) {
+                isDone = true;
+                error = t;
+                listenersToNotify = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+
+            if (t != null) {
+                // Allow the next dom which needs this resource to try again
+                synchronized (uploadedResourcesCache) {
+                    if (uploadedResourcesCache.get(resource.getSha256()) == this) {
+                        uploadedResourcesCache.remove(resource.getSha256());
+                    }
+                }
+            }
+
+            uploadsInFlight.decrementAndGet();
+            for (ServiceTaskListener<Void> listener : listenersToNotify) {
+                notifyListener(listener);
+            }
+
+            // Wake up the runner so it can start the next pending uploads
+            notifyTaskCompleted();
+        }
+
+        private void notifyListener(ServiceTaskListener<Void> listener) {
+            if (error == null) {
+                listener.onComplete(null);
+            } else {
+                listener.onFail(error);
+            }
+        }
+    }
+
+    /**
+     * The state of checking which resources of a single dom are missing on the server
+     */
+    class DomStatusCheck {
+        private final RGridDom dom;
+        private final Map<String, RGridResource> resourceMap;
+        private final RGridResource domResource;
+        private final ServiceTaskListener<List<RGridResource>> listener;
+
+        // Resources with the same content can appear in a dom under several urls
+        private final Map<String, List<RGridResource>> resourcesToCheck = new LinkedHashMap<>();
+        private final List<RGridResource> missingResources = new ArrayList<>();
+        private final List<RGridResource> uploadingResources = new ArrayList<>();
+        private int remainingHashes;
+        private boolean isRegistered = false;
+        private boolean isDone = false;
+
+        DomStatusCheck(RGridDom dom, Map<String, RGridResource> resourceMap,
+                       ServiceTaskListener<List<RGridResource>> listener) throws JsonProcessingException {
+            this.dom = dom;
+            this.resourceMap = resourceMap;
+            this.domResource = dom.asResource();
+            this.listener = listener;
+        }
+
+        List<RGridResource> getResources() {
+            List<RGridResource> resources = new ArrayList<>(resourceMap.values());
+            resources.add(domResource);
+            return resources;
+        }
+
+        /**
+         * @return true if the hash of the resource wasn't already added for this dom
+         */
+        synchronized boolean addResourceToCheck(RGridResource resource) {
+            List<RGridResource> resources = resourcesToCheck.get(resource.getSha256());
+            if (resources != null) {
+                resources.add(resource);
+                return false;
+            }
+
+            resources = new ArrayList<>();
+            resources.add(resource);
+            resourcesToCheck.put(resource.getSha256(), resources);
+            remainingHashes++;
+            return true;
+        }
+
+        void onHashesRegistered() {
+            synchronized (this) {
+                isRegistered = true;
+            }
+            completeIfDone();
+        }
+
+        void onHashChecked(String hash, boolean isExisting) {
+            synchronized (this) {
+                List<RGridResource> resources = resourcesToCheck.get(hash);
+                if (isExisting) {
+                    synchronized (uploadedResourcesCache) {
+                        for (RGridResource resource : resources) {
+                            resource.resetContent();
+                        }
+                        if (!uploadedResourcesCache.containsKey(hash)) {
+                            uploadedResourcesCache.put(hash, null);
+                        }
+                    }
+                } else {
+                    missingResources.addAll(resources);
+                }
+                remainingHashes--;
+            }
+
+            completeIfDone();
+        }
+
+        void onFail(Throwable t) {
+            synchronized (this) {
+                if (isDone) {
+                    return;
+                }
+                isDone = true;
+            }
+
+            listener.onFail(t);
+        }
+
+        private void completeIfDone() {
+            List<RGridResource> resources;
+            synchronized (this) {
+                if (isDone || !isRegistered || remainingHashes > 0) {
+                    return;
+                }
+                isDone = true;
+                resources = new ArrayList<>(missingResources);
+                resources.addAll(uploadingResources);
+            }
+
+            listener.onComplete(resources);
+        }
+    }
+
+    // The maximum amount of hashes sent in a single resources status request
+    static final int MAX_HASHES_PER_CHECK = 1000;
 
-public class ResourceCollectionService extends EyesService<FrameData, Map<String, RGridResource>> {
     final Map<String, RGridResource> resourcesCacheMap;
     private IDebugResourceWriter debugResourceWriter;
 
-    final Map<String, SyncTaskListener<Void>> uploadedResourcesCache = Collections.synchronizedMap(new HashMap<String, SyncTaskListener<Void>>());
+    // Maps a hash which is being checked with the server to the doms waiting for the answer
+    private final Map<String, List<DomStatusCheck>> hashesInCheck = new HashMap<>();
+
+    // Maps a resource hash to its upload. A null value means the resource already exists on the server.
+    final Map<String, ResourceUpload> uploadedResourcesCache = Collections.synchronizedMap(new HashMap<String, ResourceUpload>());
+    final ServiceQueue<ResourceUpload> pendingUploadsQueue = new ServiceQueue<>();
+    final AtomicInteger uploadsInFlight = new AtomicInteger();
+    private volatile int uploadConcurrency = DEFAULT_UPLOAD_CONCURRENCY;
+
+    private File diskCacheDirectory = null;
+    private UploadedResourcesDiskCache uploadedResourcesDiskCache = null;
 
     final Map<String, DomAnalyzer> tasksInDomAnalyzingProcess = Collections.synchronizedMap(new HashMap<String, DomAnalyzer>());
-    protected final List<Pair<String, Pair<RGridDom, Map<String, RGridResource>>>> waitingForUploadQueue =
-            Collections.synchronizedList(new ArrayList<Pair<String, Pair<RGridDom, Map<String, RGridResource>>>>());
+    protected final ServiceQueue<Pair<String, Pair<RGridDom, Map<String, RGridResource>>>> waitingForUploadQueue = new ServiceQueue<>();
 
     public ResourceCollectionService(Logger logger, ServerConnector serverConnector, IDebugResourceWriter debugResourceWriter,
                                      Map<String, RGridResource> resourcesCacheMap) {
@@ -36,10 +245,67 @@ public class ResourceCollectionService extends EyesService<FrameData, Map<String
         this.debugResourceWriter = debugResourceWriter != null ? debugResourceWriter : new NullDebugResourceWriter();
     }
 
+    /**
+     * Enables persisting the hashes of the resources which exist on the server, so following runs won't check them again
+     * @param diskCacheDirectory The directory of the cache file, or null for disabling the cache
+     */
+    public synchronized void setDiskCacheDirectory(File diskCacheDirectory) {
+        this.diskCacheDirectory = diskCacheDirectory;
+        resetUploadedResourcesDiskCache();
+    }
+
+    @Override
+    public void setServerConnector(ServerConnector serverConnector) {
+        super.setServerConnector(serverConnector);
+        resetUploadedResourcesDiskCache();
+    }
+
+    private synchronized void resetUploadedResourcesDiskCache() {
+        if (uploadedResourcesDiskCache != null) {
+            uploadedResourcesDiskCache.close();
+            uploadedResourcesDiskCache = null;
+        }
+    }
+
+    /**
+     * The cache is created lazily, since the server url can still change before the first check
+     */
+    synchronized UploadedResourcesDiskCache getUploadedResourcesDiskCache() {
+        if (diskCacheDirectory == null) {
+            return null;
+        }
+
+        if (uploadedResourcesDiskCache == null) {
+            uploadedResourcesDiskCache = new UploadedResourcesDiskCache(logger, diskCacheDirectory, serverConnector.getServerUrl());
+        }
+        return uploadedResourcesDiskCache;
+    }
+
+    @Override
+    public boolean isOnServer(String sha256) {
+        synchronized (uploadedResourcesCache) {
+            if (!uploadedResourcesCache.containsKey(sha256)) {
+                return false;
+            }
+
+            ResourceUpload upload = uploadedResourcesCache.get(sha256);
+            return upload == null || upload.isUploaded();
+        }
+    }
+
+    /**
+     * Sets the maximum amount of resources which are uploaded in parallel
+     */
+    public void setUploadConcurrency(int uploadConcurrency) {
+        if (uploadConcurrency <= 0) {
+            throw new IllegalArgumentException("Upload concurrency must be positive");
+        }
+        this.uploadConcurrency = uploadConcurrency;
+    }
+
     @Override
     public void run() {
-        while (!inputQueue.isEmpty()) {
-            final Pair<String, FrameData> nextInput = inputQueue.remove(0);
+        for (final Pair<String, FrameData> nextInput : inputQueue.drain()) {
             final FrameData frameData = nextInput.getRight();
 
             try {
@@ -49,19 +315,20 @@ public class ResourceCollectionService extends EyesService<FrameData, Map<String
                     public void onComplete(final Map<String, RGridResource> resourceMap) {
                         RGridDom dom = new RGridDom(frameData.getCdt(), resourceMap, frameData.getUrl());
                         dom.setTestIds(frameData.getTestIds());
-                        waitingForUploadQueue.add(Pair.of(nextInput.getLeft(), Pair.of(dom, resourceMap)));
+                        waitingForUploadQueue.offer(Pair.of(nextInput.getLeft(), Pair.of(dom, resourceMap)));
                         tasksInDomAnalyzingProcess.remove(nextInput.getLeft());
+                        notifyTaskCompleted();
                     }
 
                     @Override
                     public void onFail() {
-                        errorQueue.add(Pair.<String, Throwable>of(nextInput.getLeft(), new EyesException("Dom analyzer failed")));
+                        addError(nextInput.getLeft(), new EyesException("Dom analyzer failed"));
                         tasksInDomAnalyzingProcess.remove(nextInput.getLeft());
                     }
                 });
                 tasksInDomAnalyzingProcess.put(nextInput.getLeft(), domAnalyzer);
             } catch (Throwable t) {
-                errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                addError(nextInput.getLeft(), t);
             }
         }
 
@@ -74,139 +341,254 @@ public class ResourceCollectionService extends EyesService<FrameData, Map<String
             domAnalyzer.run();
         }
 
-        while (!waitingForUploadQueue.isEmpty()) {
-            final Pair<String, Pair<RGridDom, Map<String, RGridResource>>> nextInput = waitingForUploadQueue.remove(0);
+        // All the doms which finished analyzing since the last iteration are checked with the server together
+        List<DomStatusCheck> domStatusChecks = new ArrayList<>();
+        for (final Pair<String, Pair<RGridDom, Map<String, RGridResource>>> nextInput : waitingForUploadQueue.drain()) {
             final Pair<RGridDom, Map<String, RGridResource>> pair = nextInput.getRight();
+            final ServiceTaskListener<Void> uploadListener = new ServiceTaskListener<Void>() {
+                @Override
+                public void onComplete(Void taskResponse) {
+                    addOutput(nextInput.getLeft(), pair.getRight());
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    addError(nextInput.getLeft(), t);
+                }
+            };
+
             ServiceTaskListener<List<RGridResource>> checkResourceListener = new ServiceTaskListener<List<RGridResource>>() {
                 @Override
                 public void onComplete(List<RGridResource> resources) {
                     try {
-                        uploadResources(pair.getLeft().getTestIds(), resources);
+                        uploadResources(pair.getLeft().getTestIds(), resources, uploadListener);
                     } catch (Throwable t) {
                         onFail(t);
-                        return;
                     }
-
-                    outputQueue.add(Pair.of(nextInput.getLeft(), pair.getRight()));
                 }
 
                 @Override
                 public void onFail(Throwable t) {
-                    errorQueue.add(Pair.of(nextInput.getLeft(), t));
+                    addError(nextInput.getLeft(), t);
                 }
             };
 
             try {
-                checkResourcesStatus(pair.getLeft(), pair.getRight(), checkResourceListener);
+                domStatusChecks.add(new DomStatusCheck(pair.getLeft(), pair.getRight(), checkResourceListener));
             } catch (Throwable t) {
                 checkResourceListener.onFail(t);
             }
         }
+
+        checkResourcesStatus(domStatusChecks);
+        startPendingUploads();
+    }
+
+    private void startPendingUploads() {
+        while (uploadsInFlight.get() < uploadConcurrency) {
+            ResourceUpload upload = pendingUploadsQueue.poll();
+            if (upload == null) {
+                return;
+            }
+
+            uploadsInFlight.incrementAndGet();
+            upload.start();
+        }
+    }
+
+    @Override
+    public boolean isPollingRequired() {
+        // Dom analyzers only make progress when they are run
+        return !tasksInDomAnalyzingProcess.isEmpty();
     }
 
     /**
-     * Checks with the server what resources are missing.
+     * Checks with the server what resources of a single dom are missing.
      */
     void checkResourcesStatus(final RGridDom dom, final Map<String, RGridResource> resourceMap,
                               final ServiceTaskListener<List<RGridResource>> listener) throws JsonProcessingException {
+        checkResourcesStatus(Collections.singletonList(new DomStatusCheck(dom, resourceMap, listener)));
+    }
+
+    /**
+     * Checks with the server what resources are missing for all the given doms at once.
+     * Every hash is sent once, even if several doms need it or if it is already being checked for an earlier dom.
+     */
+    void checkResourcesStatus(List<DomStatusCheck> domStatusChecks) {
+        if (domStatusChecks.isEmpty()) {
+            return;
+        }
+
+        UploadedResourcesDiskCache diskCache = getUploadedResourcesDiskCache();
         List<HashObject> hashesToCheck = new ArrayList<>();
-        final Map<String, String> hashToResourceUrl = new HashMap<>();
-        for (RGridResource  resource : resourceMap.values()) {
-            String url = resource.getUrl();
-            String hash = resource.getSha256();
-            String hashFormat = resource.getHashFormat();
-            synchronized (uploadedResourcesCache) {
-                if (!uploadedResourcesCache.containsKey(hash)) {
-                    hashesToCheck.add(new HashObject(hashFormat, hash));
-                    hashToResourceUrl.put(hash, url);
+        Set<String> testIds = new HashSet<>();
+        for (DomStatusCheck domStatusCheck : domStatusChecks) {
+            if (domStatusCheck.dom.getTestIds() != null) {
+                testIds.addAll(domStatusCheck.dom.getTestIds());
+            }
+            for (RGridResource resource : domStatusCheck.getResources()) {
+                String hash = resource.getSha256();
+                synchronized (uploadedResourcesCache) {
+                    if (uploadedResourcesCache.containsKey(hash)) {
+                        if (uploadedResourcesCache.get(hash) != null) {
+                            // Being uploaded for another dom. This dom has to wait for it as well.
+                            domStatusCheck.uploadingResources.add(resource);
+                        }
+                        continue;
+                    }
+
+                    if (diskCache != null && diskCache.contains(hash)) {
+                        // A previous run already found this resource on the server
+                        resource.resetContent();
+                        uploadedResourcesCache.put(hash, null);
+                        continue;
+                    }
+                }
+
+                boolean isNewHash = domStatusCheck.addResourceToCheck(resource);
+                if (!isNewHash) {
+                    continue;
+                }
+
+                synchronized (hashesInCheck) {
+                    List<DomStatusCheck> waitingChecks = hashesInCheck.get(hash);
+                    if (waitingChecks == null) {
+                        waitingChecks = new ArrayList<>();
+                        hashesInCheck.put(hash, waitingChecks);
+                        hashesToCheck.add(new HashObject(resource.getHashFormat(), hash));
+                    }
+                    waitingChecks.add(domStatusCheck);
                 }
             }
         }
 
-        final RGridResource domResource = dom.asResource();
-        synchronized (uploadedResourcesCache) {
-            if (!uploadedResourcesCache.containsKey(domResource.getSha256())) {
-                hashesToCheck.add(new HashObject(domResource.getHashFormat(), domResource.getSha256()));
-                hashToResourceUrl.put(domResource.getSha256(), domResource.getUrl());
-            }
+        for (DomStatusCheck domStatusCheck : domStatusChecks) {
+            domStatusCheck.onHashesRegistered();
         }
 
-        if (hashesToCheck.isEmpty()) {
-            listener.onComplete(new ArrayList<RGridResource>());
-            return;
+        for (int i = 0; i < hashesToCheck.size(); i += MAX_HASHES_PER_CHECK) {
+            List<HashObject> chunk = hashesToCheck.subList(i, Math.min(i + MAX_HASHES_PER_CHECK, hashesToCheck.size()));
+            sendCheckResourcesRequest(testIds, chunk.toArray(new HashObject[0]));
         }
+    }
 
-        final HashObject[] hashesArray = hashesToCheck.toArray(new HashObject[0]);
-        serverConnector.checkResourceStatus(new TaskListener<Boolean[]>() {
+    private void sendCheckResourcesRequest(final Set<String> testIds, final HashObject[] hashesArray) {
+        TaskListener<Boolean[]> listener = new TaskListener<Boolean[]>() {
             @Override
             public void onComplete(Boolean[] result) {
-                if (result == null) {
+                if (result == null || result.length != hashesArray.length) {
                     onFail();
                     return;
                 }
 
-                logger.log(TraceLevel.Info, dom.getTestIds(), Stage.RESOURCE_COLLECTION, Type.CHECK_RESOURCE, Pair.of("result", result));
-                // Analyzing the server response and find the missing resources
-                List<RGridResource> missingResources = new ArrayList<>();
+                logger.log(TraceLevel.Info, testIds, Stage.RESOURCE_COLLECTION, Type.CHECK_RESOURCE, Pair.of("result", result));
+                List<String> existingHashes = new ArrayList<>();
                 for (int i = 0; i < result.length; i++) {
-                    String hash = hashesArray[i].getHash();
-                    String resourceUrl = hashToResourceUrl.get(hash);
-                    if (result[i] != null && result[i]) {
-                        synchronized (uploadedResourcesCache) {
-                            RGridResource resource;
-                            if (resourceUrl.equals(domResource.getUrl()) && hash.equals(domResource.getSha256())) {
-                                resource = domResource;
-                            } else {
-                                resource = resourceMap.get(resourceUrl);
-                            }
-
-                            resource.resetContent();
-                            uploadedResourcesCache.put(resource.getSha256(), null);
-                        }
-                        continue;
-                    }
-
-                    if (resourceUrl.equals(domResource.getUrl()) && hash.equals(domResource.getSha256())) {
-                        missingResources.add(domResource);
-                        continue;
+                    boolean isExisting = result[i] != null && result[i];
+                    if (isExisting) {
+                        existingHashes.add(hashesArray[i].getHash());
                     }
-
-                    missingResources.add(resourceMap.get(resourceUrl));
+                    onHashChecked(hashesArray[i].getHash(), isExisting, null);
                 }
 
-                listener.onComplete(missingResources);
+                UploadedResourcesDiskCache diskCache = getUploadedResourcesDiskCache();
+                if (diskCache != null) {
+                    diskCache.addAll(existingHashes);
+                }
             }
 
             @Override
             public void onFail() {
-                listener.onFail(new EyesException("Failed checking resources with the server"));
+                Throwable t = new EyesException("Failed checking resources with the server");
+                for (HashObject hashObject : hashesArray) {
+                    onHashChecked(hashObject.getHash(), false, t);
+                }
+            }
+        };
+
+        try {
+            serverConnector.checkResourceStatus(listener, testIds, null, hashesArray);
+        } catch (Throwable t) {
+            for (HashObject hashObject : hashesArray) {
+                onHashChecked(hashObject.getHash(), false, t);
+            }
+        }
+    }
+
+    private void onHashChecked(String hash, boolean isExisting, Throwable error) {
+        List<DomStatusCheck> waitingChecks;
+        synchronized (hashesInCheck) {
+            waitingChecks = hashesInCheck.remove(hash);
+        }
+
+        if (waitingChecks == null) {
+            return;
+        }
+
+        for (DomStatusCheck domStatusCheck : waitingChecks) {
+            if (error != null) {
+                domStatusCheck.onFail(error);
+            } else {
+                domStatusCheck.onHashChecked(hash, isExisting);
             }
-        }, dom.getTestIds(), null, hashesArray);
+        }
     }
 
-    void uploadResources(Set<String> testIds, List<RGridResource> resources) {
+    /**
+     * Uploads the missing resources without blocking. Resources which are already being uploaded for another dom
+     * aren't uploaded again. The listener is called when all the resources are on the server.
+     */
+    void uploadResources(final Set<String> testIds, List<RGridResource> resources, final ServiceTaskListener<Void> listener) {
         logger.log(TraceLevel.Info, testIds, Stage.RESOURCE_COLLECTION, Type.UPLOAD_RESOURCE, Pair.of("resources", resources));
-        for (RGridResource resource : resources) {
-            synchronized (uploadedResourcesCache) {
-                if (uploadedResourcesCache.containsKey(resource.getSha256())) {
-                    continue;
+        if (resources.isEmpty()) {
+            listener.onComplete(null);
+            return;
+        }
+
+        final AtomicInteger remainingResources = new AtomicInteger(resources.size());
+        final AtomicBoolean isFailed = new AtomicBoolean(false);
+        ServiceTaskListener<Void> resourceListener = new ServiceTaskListener<Void>() {
+            @Override
+            public void onComplete(Void taskResponse) {
+                if (remainingResources.decrementAndGet() == 0 && !isFailed.get()) {
+                    logger.log(TraceLevel.Info, testIds, Stage.RESOURCE_COLLECTION, Type.UPLOAD_RESOURCE, Pair.of("completed", true));
+                    listener.onComplete(null);
                 }
+            }
 
-                SyncTaskListener<Void> listener = new SyncTaskListener<>(logger, String.format("uploadResource %s %s", resource.getSha256(), resource.getUrl()));
-                serverConnector.renderPutResource(testIds, "NONE", resource, listener);
-                uploadedResourcesCache.put(resource.getSha256(), listener);
+            @Override
+            public void onFail(Throwable t) {
+                if (isFailed.compareAndSet(false, true)) {
+                    listener.onFail(t);
+                }
             }
-        }
+        };
 
-        // Wait for all resources to be uploaded
+        boolean hasNewUploads = false;
         for (RGridResource resource : resources) {
-            // A blocking call
-            SyncTaskListener<Void> listener = uploadedResourcesCache.get(resource.getSha256());
-            if (listener != null) {
-                listener.get();
+            ResourceUpload upload;
+            synchronized (uploadedResourcesCache) {
+                upload = uploadedResourcesCache.get(resource.getSha256());
+                if (upload == null && !uploadedResourcesCache.containsKey(resource.getSha256())) {
+                    upload = new ResourceUpload(testIds, resource);
+                    uploadedResourcesCache.put(resource.getSha256(), upload);
+                    pendingUploadsQueue.offer(upload);
+                    hasNewUploads = true;
+                }
+            }
+
+            if (upload == null) {
+                // The resource already exists on the server
+                resourceListener.onComplete(null);
+                continue;
             }
+
+            upload.addListener(resourceListener);
         }
 
-        logger.log(TraceLevel.Info, testIds, Stage.RESOURCE_COLLECTION, Type.UPLOAD_RESOURCE, Pair.of("completed", true));
+        if (hasNewUploads) {
+            // The uploads are started by the runner thread
+            notifyTaskCompleted();
+        }
     }
 }
@@ -0,0 +1,281 @@
+package com.applitools.eyes.services;
+
+import com.applitools.eyes.visualgrid.model.RGridResource;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent url to resource cache, bounded by the total size of the resources content.
+ * When the content exceeds the limit, the content of resources which weren't used recently is evicted.
+ * Resources are never removed by the eviction, only their content is, so their hashes stay known and
+ * a resource found by {@link #containsKey} can always be taken by {@link #get}.
+ * The content of resources which aren't on the server yet is kept, since it's still needed for uploading.
+ */
+public class ResourcesCache extends AbstractMap<String, RGridResource> {
+    public static final long DEFAULT_MAX_CONTENT_BYTES = 512L * 1024 * 1024;
+
+    // After an eviction the content is reduced below the limit, so evictions won't happen on every put
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    // Bounds the work of a single eviction when most of the content can't be evicted yet
+    private static final int MAX_REQUEUES_PER_EVICTION = 128;
+
+    public interface UploadStatusProvider {
+        /**
+         * @return true if the resource with the given hash is known to exist on the server
+         */
+        boolean isOnServer(String sha256);
+    }
+
+    public static class Statistics {
+        private final int size;
+        private final long contentBytes;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Statistics(int size, long contentBytes, long hits, long misses, long evictions) {
+            this.size = size;
+            this.contentBytes = contentBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getContentBytes() {
+            return contentBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "size=" + size +
+                    ", contentBytes=" + contentBytes +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    '}';
+        }
+    }
+
+    private static class CacheEntry {
+        final String url;
+        final RGridResource resource;
+        volatile long lastAccess;
+        volatile long weight;
+
+        // The last access when the entry was added to the eviction queue. Only used while evicting.
+        long queuedAccess;
+
+        CacheEntry(String url, RGridResource resource, long weight, long lastAccess) {
+            this.url = url;
+            this.resource = resource;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+            this.queuedAccess = lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    // Entries with content, in the order they are considered for eviction. Entries which were accessed
+    // since they were queued get a second chance at the tail, so each eviction only visits a few entries.
+    private final Queue<CacheEntry> evictionQueue = new ConcurrentLinkedQueue<>();
+    private final Object evictionLock = new Object();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong contentBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile long maxContentBytes;
+    private volatile UploadStatusProvider uploadStatusProvider;
+
+    public ResourcesCache() {
+        this(DEFAULT_MAX_CONTENT_BYTES);
+    }
+
+    public ResourcesCache(long maxContentBytes) {
+        setMaxContentBytes(maxContentBytes);
+    }
+
+    public void setMaxContentBytes(long maxContentBytes) {
+        if (maxContentBytes <= 0) {
+            throw new IllegalArgumentException("Max content bytes must be positive");
+        }
+        this.maxContentBytes = maxContentBytes;
+    }
+
+    public long getMaxContentBytes() {
+        return maxContentBytes;
+    }
+
+    public void setUploadStatusProvider(UploadStatusProvider uploadStatusProvider) {
+        this.uploadStatusProvider = uploadStatusProvider;
+    }
+
+    private static long getContentLength(RGridResource resource) {
+        byte[] content = resource.getContent();
+        return content == null ? 0 : content.length;
+    }
+
+    @Override
+    public RGridResource get(Object url) {
+        CacheEntry entry = entries.get(url);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.resource;
+    }
+
+    @Override
+    public boolean containsKey(Object url) {
+        return entries.containsKey(url);
+    }
+
+    @Override
+    public RGridResource put(String url, RGridResource resource) {
+        long weight = getContentLength(resource);
+        CacheEntry entry = new CacheEntry(url, resource, weight, clock.incrementAndGet());
+        CacheEntry previous = entries.put(url, entry);
+        if (weight > 0) {
+            evictionQueue.offer(entry);
+        }
+        long currentBytes = contentBytes.addAndGet(previous == null ? weight : weight - previous.weight);
+        if (currentBytes > maxContentBytes) {
+            evict();
+        }
+        return previous == null ? null : previous.resource;
+    }
+
+    @Override
+    public RGridResource remove(Object url) {
+        CacheEntry entry = entries.remove(url);
+        if (entry == null) {
+            return null;
+        }
+
+        contentBytes.addAndGet(-entry.weight);
+        return entry.resource;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        evictionQueue.clear();
+        contentBytes.set(0);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Set<Entry<String, RGridResource>> entrySet() {
+        return new AbstractSet<Entry<String, RGridResource>>() {
+            @Override
+            public Iterator<Entry<String, RGridResource>> iterator() {
+                final Iterator<CacheEntry> iterator = entries.values().iterator();
+                return new Iterator<Entry<String, RGridResource>>() {
+                    private CacheEntry current;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, RGridResource> next() {
+                        current = iterator.next();
+                        return new SimpleImmutableEntry<>(current.url, current.resource);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (current == null) {
+                            throw new IllegalStateException();
+                        }
+                        ResourcesCache.this.remove(current.url);
+                        current = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /**
+     * Evicts the content of entries which weren't accessed recently, until the cache is below the eviction target.
+     * Content can also be reset outside of the cache, so the size of each visited entry is recalculated.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            long targetBytes = (long) (maxContentBytes * EVICTION_TARGET_RATIO);
+            UploadStatusProvider provider = uploadStatusProvider;
+
+            // Entries which can't be evicted go back to the queue, so the number of retries is bounded.
+            // What isn't evicted now is evicted by the next puts.
+            int maxRequeues = Math.min(2 * entries.size(), MAX_REQUEUES_PER_EVICTION);
+            int requeues = 0;
+            CacheEntry entry;
+            while (contentBytes.get() > targetBytes && requeues <= maxRequeues && (entry = evictionQueue.poll()) != null) {
+                if (entries.get(entry.url) != entry) {
+                    // The entry was replaced or removed, and its size was already subtracted
+                    continue;
+                }
+
+                long weight = getContentLength(entry.resource);
+                contentBytes.addAndGet(weight - entry.weight);
+                entry.weight = weight;
+                if (weight == 0) {
+                    continue;
+                }
+
+                long lastAccess = entry.lastAccess;
+                if (lastAccess != entry.queuedAccess || provider == null || !provider.isOnServer(entry.resource.getSha256())) {
+                    entry.queuedAccess = lastAccess;
+                    evictionQueue.offer(entry);
+                    requeues++;
+                    continue;
+                }
+
+                entry.resource.resetContent();
+                contentBytes.addAndGet(-weight);
+                entry.weight = 0;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(entries.size(), contentBytes.get(), hits.get(), misses.get(), evictions.get());
+    }
+}
@@ -0,0 +1,184 @@
+package com.applitools.eyes.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue for passing tasks between the service runner and the http callback threads.
+ * Any thread can add items, but only the service runner thread is expected to remove them.
+ */
+public class ServiceQueue<T> implements Iterable<T> {
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    public static class Statistics {
+        private final int depth;
+        private final int maxDepth;
+        private final long enqueuedCount;
+        private final long dequeuedCount;
+        private final long rejectedCount;
+
+        Statistics(int depth, int maxDepth, long enqueuedCount, long dequeuedCount, long rejectedCount) {
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.enqueuedCount = enqueuedCount;
+            this.dequeuedCount = dequeuedCount;
+            this.rejectedCount = rejectedCount;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public long getEnqueuedCount() {
+            return enqueuedCount;
+        }
+
+        public long getDequeuedCount() {
+            return dequeuedCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "depth=" + depth +
+                    ", maxDepth=" + maxDepth +
+                    ", enqueuedCount=" + enqueuedCount +
+                    ", dequeuedCount=" + dequeuedCount +
+                    ", rejectedCount=" + rejectedCount +
+                    '}';
+        }
+    }
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final int capacity;
+
+    // The size of a ConcurrentLinkedQueue isn't a constant time operation, so we count it ourselves
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger maxSize = new AtomicInteger();
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong dequeuedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public ServiceQueue() {
+        this(UNBOUNDED);
+    }
+
+    public ServiceQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the queue is full and the item wasn't added
+     */
+    public boolean offer(T item) {
+        int currentSize;
+        do {
+            currentSize = size.get();
+            if (currentSize >= capacity) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+        } while (!size.compareAndSet(currentSize, currentSize + 1));
+
+        enqueue(item, currentSize + 1);
+        return true;
+    }
+
+    /**
+     * Adds the item even if the queue is full, for items which mustn't be dropped
+     */
+    public void add(T item) {
+        enqueue(item, size.incrementAndGet());
+    }
+
+    private void enqueue(T item, int newSize) {
+        queue.offer(item);
+        enqueuedCount.incrementAndGet();
+        int currentMaxSize;
+        do {
+            currentMaxSize = maxSize.get();
+        } while (newSize > currentMaxSize && !maxSize.compareAndSet(currentMaxSize, newSize));
+    }
+
+    /**
+     * @return the head of the queue or null if the queue is empty
+     */
+    public T poll() {
+        T item = queue.poll();
+        if (item != null) {
+            size.decrementAndGet();
+            dequeuedCount.incrementAndGet();
+        }
+        return item;
+    }
+
+    public T peek() {
+        return queue.peek();
+    }
+
+    /**
+     * Removes all the items currently in the queue in a single batch
+     */
+    public List<T> drain() {
+        return drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to {@code maxItems} items from the head of the queue in a single batch
+     */
+    public List<T> drain(int maxItems) {
+        List<T> items = new ArrayList<>(Math.min(maxItems, Math.max(size.get(), 0)));
+        T item;
+        while (items.size() < maxItems && (item = queue.poll()) != null) {
+            items.add(item);
+        }
+
+        if (!items.isEmpty()) {
+            size.addAndGet(-items.size());
+            dequeuedCount.addAndGet(items.size());
+        }
+        return items;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return Math.max(size.get(), 0);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(size(), maxSize.get(), enqueuedCount.get(), dequeuedCount.get(), rejectedCount.get());
+    }
+
+    /**
+     * A weakly consistent iterator which doesn't remove items
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return Collections.unmodifiableCollection(queue).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return queue.toString();
+    }
+}
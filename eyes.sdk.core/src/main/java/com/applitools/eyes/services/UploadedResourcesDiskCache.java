@@ -0,0 +1,193 @@
+package com.applitools.eyes.services;
+
+import com.applitools.eyes.Logger;
+import com.applitools.eyes.logging.Stage;
+import com.applitools.eyes.logging.TraceLevel;
+import com.applitools.eyes.logging.Type;
+import com.applitools.utils.GeneralUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A set of resource hashes which are known to exist on the server, persisted between runs.
+ * The entries are kept in an append-only file, one "hash timestamp" line per entry, and the file is compacted
+ * when it grows too much. Entries expire after a time to live, and the least recently used entries are evicted
+ * when the cache is full. Several processes can share the same file, since the worst outcome of a lost or stale
+ * entry is an extra query to the server.
+ */
+public class UploadedResourcesDiskCache {
+    public static final long DEFAULT_TIME_TO_LIVE_MS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    // The file is compacted when it has this many times more lines than entries
+    private static final int COMPACTION_FACTOR = 2;
+
+    private final Logger logger;
+    private final File file;
+    private final long timeToLiveMs;
+    private final int maxEntries;
+
+    // Access ordered, so iteration starts from the least recently used hash
+    private final LinkedHashMap<String, Long> entries;
+    private Writer writer;
+    private int linesInFile = 0;
+
+    public UploadedResourcesDiskCache(Logger logger, File directory, URI serverUrl) {
+        this(logger, directory, serverUrl, DEFAULT_TIME_TO_LIVE_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public UploadedResourcesDiskCache(Logger logger, File directory, URI serverUrl, long timeToLiveMs, final int maxEntries) {
+        this.logger = logger;
+        this.timeToLiveMs = timeToLiveMs;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        // Resources are stored per server, so every server has its own file
+        String serverKey = serverUrl == null ? "default" : Integer.toHexString(serverUrl.toString().hashCode());
+        this.file = new File(directory, String.format("uploaded-resources-%s.log", serverKey));
+        load();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                linesInFile++;
+                int separatorIndex = line.indexOf(' ');
+                if (separatorIndex <= 0) {
+                    continue;
+                }
+
+                long timestamp;
+                try {
+                    timestamp = Long.parseLong(line.substring(separatorIndex + 1));
+                } catch (NumberFormatException e) {
+                    // A partially written line from a crashed process
+                    continue;
+                }
+
+                if (now - timestamp < timeToLiveMs) {
+                    entries.put(line.substring(0, separatorIndex), timestamp);
+                }
+            }
+        } catch (IOException e) {
+            GeneralUtils.logExceptionStackTrace(logger, Stage.RESOURCE_COLLECTION, e);
+        }
+
+        logger.log(TraceLevel.Info, new HashSet<String>(), Stage.RESOURCE_COLLECTION, Type.CHECK_RESOURCE,
+                Pair.of("diskCacheFile", file.getAbsolutePath()),
+                Pair.of("diskCacheEntries", entries.size()));
+    }
+
+    /**
+     * @return true if the hash was uploaded to the server within the time to live
+     */
+    public synchronized boolean contains(String hash) {
+        Long timestamp = entries.get(hash);
+        if (timestamp == null) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - timestamp >= timeToLiveMs) {
+            entries.remove(hash);
+            return false;
+        }
+
+        return true;
+    }
+
+    public void add(String hash) {
+        addAll(Collections.singletonList(hash));
+    }
+
+    /**
+     * Marks the hashes as existing on the server and appends them to the file
+     */
+    public synchronized void addAll(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            if (writer == null) {
+                File directory = file.getParentFile();
+                if (directory != null && !directory.exists() && !directory.mkdirs() && !directory.exists()) {
+                    throw new IOException(String.format("Failed creating directory %s", directory));
+                }
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            }
+
+            for (String hash : hashes) {
+                entries.put(hash, now);
+                writer.write(hash);
+                writer.write(' ');
+                writer.write(Long.toString(now));
+                writer.write('\n');
+                linesInFile++;
+            }
+            writer.flush();
+
+            if (linesInFile > Math.max(entries.size(), 1) * COMPACTION_FACTOR && linesInFile > maxEntries) {
+                compact();
+            }
+        } catch (IOException e) {
+            GeneralUtils.logExceptionStackTrace(logger, Stage.RESOURCE_COLLECTION, e);
+        }
+    }
+
+    /**
+     * Rewrites the file with the live entries only
+     */
+    private void compact() throws IOException {
+        close();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                tempWriter.write(entry.getKey());
+                tempWriter.write(' ');
+                tempWriter.write(Long.toString(entry.getValue()));
+                tempWriter.write('\n');
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            // Renaming over an existing file fails on some file systems
+            if (!file.delete() || !tempFile.renameTo(file)) {
+                throw new IOException(String.format("Failed compacting %s", file));
+            }
+        }
+        linesInFile = entries.size();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            GeneralUtils.logExceptionStackTrace(logger, Stage.RESOURCE_COLLECTION, e);
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.applitools.eyes.services;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the urls of uploaded screenshots by the hash of their pixels, bounded by the number of urls.
+ * Identical screenshots of different steps, tests and browsers of the same runner reuse the url of the first upload.
+ * When the cache is full, the least recently used urls are evicted.
+ */
+public class UploadedScreenshotsCache {
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final Map<String, String> urls;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public UploadedScreenshotsCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public UploadedScreenshotsCache(final int maxSize) {
+        ArgumentGuard.greaterThanZero(maxSize, "maxSize");
+        urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return The url of the uploaded screenshot with the given hash, or null if it isn't cached
+     */
+    public String get(String screenshotHash) {
+        String url;
+        synchronized (urls) {
+            url = urls.get(screenshotHash);
+        }
+
+        if (url == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return url;
+    }
+
+    public void put(String screenshotHash, String url) {
+        ArgumentGuard.notNull(screenshotHash, "screenshotHash");
+        ArgumentGuard.notNull(url, "url");
+        synchronized (urls) {
+            urls.put(screenshotHash, url);
+        }
+    }
+
+    public int size() {
+        synchronized (urls) {
+            return urls.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -8,6 +8,9 @@ public class RunnerOptions {
     private String apiKey = null;
     private String serverUrl = null;
     private AbstractProxySettings proxySettings = null;
+    private Integer resourceUploadConcurrency = null;
+    private String resourceCacheDirectory = null;
+    private Long resourcesCacheMaxBytes = null;
 
     public RunnerOptions testConcurrency(int testConcurrency) {
         this.testConcurrency = testConcurrency;
@@ -44,4 +47,41 @@ public class RunnerOptions {
     public AbstractProxySettings getProxy() {
         return proxySettings;
     }
+
+    /**
+     * Sets the maximum amount of resources which are uploaded to the server in parallel
+     */
+    public RunnerOptions resourceUploadConcurrency(int resourceUploadConcurrency) {
+        this.resourceUploadConcurrency = resourceUploadConcurrency;
+        return this;
+    }
+
+    public Integer getResourceUploadConcurrency() {
+        return resourceUploadConcurrency;
+    }
+
+    /**
+     * Sets a directory for caching the resources which exist on the server between runs.
+     * Jobs which share the directory don't check the same resources with the server again.
+     */
+    public RunnerOptions resourceCacheDirectory(String resourceCacheDirectory) {
+        this.resourceCacheDirectory = resourceCacheDirectory;
+        return this;
+    }
+
+    public String getResourceCacheDirectory() {
+        return resourceCacheDirectory;
+    }
+
+    /**
+     * Sets the maximum size of the resources content kept in memory by the runner
+     */
+    public RunnerOptions resourcesCacheMaxBytes(long resourcesCacheMaxBytes) {
+        this.resourcesCacheMaxBytes = resourcesCacheMaxBytes;
+        return this;
+    }
+
+    public Long getResourcesCacheMaxBytes() {
+        return resourcesCacheMaxBytes;
+    }
 }
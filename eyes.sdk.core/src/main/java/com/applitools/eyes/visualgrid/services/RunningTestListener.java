@@ -0,0 +1,8 @@
+package com.applitools.eyes.visualgrid.services;
+
+public interface RunningTestListener {
+    /**
+     * Called after any change which might make the test ready to be closed
+     */
+    void onStateChanged(VisualGridRunningTest runningTest);
+}
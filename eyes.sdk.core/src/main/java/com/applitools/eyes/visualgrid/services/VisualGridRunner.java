@@ -5,6 +5,7 @@ import com.applitools.eyes.*;
 import com.applitools.eyes.logging.Stage;
 import com.applitools.eyes.logging.TraceLevel;
 import com.applitools.eyes.services.EyesServiceRunner;
+import com.applitools.eyes.services.ResourcesCache;
 import com.applitools.eyes.visualgrid.model.FrameData;
 import com.applitools.eyes.visualgrid.model.IDebugResourceWriter;
 import com.applitools.eyes.visualgrid.model.RGridResource;
@@ -13,8 +14,11 @@ import com.applitools.utils.GeneralUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VisualGridRunner extends EyesRunner {
     static class TestConcurrency {
@@ -39,12 +43,14 @@ public class VisualGridRunner extends EyesRunner {
 
     private static final int CONCURRENCY_FACTOR = 5;
     static final int DEFAULT_CONCURRENCY = 5;
+    static final String RESOURCE_CACHE_DIR_ENV = "APPLITOOLS_RESOURCE_CACHE_DIR";
 
     private EyesServiceRunner eyesServiceRunner;
     final TestConcurrency testConcurrency;
     private boolean wasConcurrencyLogSent = false;
     final Set<IEyes> allEyes = Collections.synchronizedSet(new HashSet<IEyes>());
-    private final Map<String, RGridResource> resourcesCacheMap = Collections.synchronizedMap(new HashMap<String, RGridResource>());
+    private final Map<String, RunningTest> runningTests = new ConcurrentHashMap<>();
+    private final ResourcesCache resourcesCacheMap = new ResourcesCache();
 
     private RenderingInfo renderingInfo;
     private IDebugResourceWriter debugResourceWriter;
@@ -81,11 +87,24 @@ public class VisualGridRunner extends EyesRunner {
         setServerUrl(runnerOptions.getServerUrl());
         setProxy(runnerOptions.getProxy());
         init(suiteName);
+        if (runnerOptions.getResourceUploadConcurrency() != null) {
+            eyesServiceRunner.setResourceUploadConcurrency(runnerOptions.getResourceUploadConcurrency());
+        }
+        if (runnerOptions.getResourcesCacheMaxBytes() != null) {
+            resourcesCacheMap.setMaxContentBytes(runnerOptions.getResourcesCacheMaxBytes());
+        }
+        if (runnerOptions.getResourceCacheDirectory() != null) {
+            eyesServiceRunner.setResourceCacheDirectory(new File(runnerOptions.getResourceCacheDirectory()));
+        }
     }
 
     private void init(String suiteName) {
         this.suiteName = suiteName;
-        eyesServiceRunner = new EyesServiceRunner(logger, serverConnector, allEyes, testConcurrency.actualConcurrency, debugResourceWriter, resourcesCacheMap);
+        eyesServiceRunner = new EyesServiceRunner(logger, serverConnector, runningTests, testConcurrency.actualConcurrency, debugResourceWriter, resourcesCacheMap);
+        String resourceCacheDirectory = GeneralUtils.getEnvString(RESOURCE_CACHE_DIR_ENV);
+        if (resourceCacheDirectory != null && !resourceCacheDirectory.isEmpty()) {
+            eyesServiceRunner.setResourceCacheDirectory(new File(resourceCacheDirectory));
+        }
         eyesServiceRunner.start();
     }
 
@@ -112,6 +131,9 @@ public class VisualGridRunner extends EyesRunner {
         }
 
         this.addBatch(eyes.getBatchId(), eyes.getBatchCloser());
+        for (VisualGridRunningTest runningTest : newTests) {
+            runningTests.put(runningTest.getTestId(), runningTest);
+        }
         eyesServiceRunner.openTests(newTests);
     }
 
@@ -139,6 +161,9 @@ public class VisualGridRunner extends EyesRunner {
         }
 
         eyesServiceRunner.stopServices();
+        logger.log(TraceLevel.Info, new HashSet<String>(), Stage.CLOSE, null,
+                Pair.of("resourcesCache", resourcesCacheMap.getStatistics()),
+                Pair.of("renders", eyesServiceRunner.getRenderStatistics()));
 
         Throwable exception = null;
         List<TestResultContainer> allResults = new ArrayList<>();
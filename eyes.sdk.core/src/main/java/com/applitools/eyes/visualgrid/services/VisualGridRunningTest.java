@@ -22,6 +22,7 @@ public class VisualGridRunningTest extends RunningTest {
     private final Configuration configuration;
     final List<CheckTask> checkTasks = new ArrayList<>();
     private JobInfo jobInfo;
+    private RunningTestListener runningTestListener;
 
     public VisualGridRunningTest(Logger logger, String eyesId, RenderBrowserInfo browserInfo, Configuration configuration) {
         super(browserInfo, logger);
@@ -41,6 +42,16 @@ public class VisualGridRunningTest extends RunningTest {
         }
     }
 
+    public void setRunningTestListener(RunningTestListener runningTestListener) {
+        this.runningTestListener = runningTestListener;
+    }
+
+    private void notifyStateChanged() {
+        if (runningTestListener != null) {
+            runningTestListener.onStateChanged(this);
+        }
+    }
+
     private void removeAllCheckTasks() {
         checkTasks.clear();
     }
@@ -68,6 +79,18 @@ public class VisualGridRunningTest extends RunningTest {
         return notRenderedStepsCount < PARALLEL_STEPS_LIMIT;
     }
 
+    @Override
+    public void openCompleted(RunningSession result) {
+        super.openCompleted(result);
+        notifyStateChanged();
+    }
+
+    @Override
+    public void openFailed(Throwable e) {
+        super.openFailed(e);
+        notifyStateChanged();
+    }
+
     @Override
     public MatchWindowData prepareForMatch(CheckTask checkTask) {
         RenderStatusResults renderResult = checkTask.getRenderStatusResults();
@@ -115,6 +138,13 @@ public class VisualGridRunningTest extends RunningTest {
     public void checkCompleted(CheckTask checkTask, MatchResult matchResult) {
         validateResult(matchResult);
         checkTasks.remove(checkTask);
+        notifyStateChanged();
+    }
+
+    @Override
+    public void issueClose() {
+        super.issueClose();
+        notifyStateChanged();
     }
 
     @Override
@@ -123,6 +153,7 @@ public class VisualGridRunningTest extends RunningTest {
         if (isTestAborted()) {
             removeAllCheckTasks();
         }
+        notifyStateChanged();
     }
 
     /**
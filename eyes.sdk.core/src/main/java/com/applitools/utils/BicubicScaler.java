@@ -0,0 +1,263 @@
+package com.applitools.utils;
+
+import com.applitools.eyes.EyesException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scales images of type {@link ImageUtils#REQUIRED_IMAGE_TYPE} with bicubic interpolation, straight on their bytes.
+ * The rows are interpolated first and then the columns. When the target is smaller than half of the image,
+ * the image is interpolated to a multiple of the target size, and each block of pixels is averaged into a pixel.
+ * The rows of large images are interpolated in parallel.
+ */
+class BicubicScaler {
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final long PARALLEL_SCALING_MIN_PIXELS = 512 * 512;
+    private static final int ROWS_PER_TASK = 32;
+
+    /**
+     * The scaling threads are created only when a large image is scaled for the first time
+     */
+    private static class ScalingExecutorHolder {
+        static final int THREADS = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BicubicScaler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Processes a range of rows
+     */
+    private interface RowsTask {
+        void run(int fromRow, int toRow);
+    }
+
+    private BicubicScaler() {
+    }
+
+    static BufferedImage scale(BufferedImage srcImage, final int targetWidth, final int targetHeight) {
+        // The rows are interpolated straight from the data of the image
+        final ImageRows srcRows = new ImageRows(srcImage.getRaster());
+        final byte[] src = srcRows.getData();
+
+        final int wSrc = srcImage.getWidth();
+        final int hSrc = srcImage.getHeight();
+
+        // when dst smaller than src/2, interpolate first to a multiple between 0.5 and 1.0 src, then sum squares
+        final int wM = Math.max(1, wSrc / targetWidth);
+        final int wDst2 = targetWidth * wM;
+        final int hM = Math.max(1, hSrc / targetHeight);
+        final int hDst2 = targetHeight * hM;
+        final int rowLength2 = wDst2 * BYTES_PER_PIXEL;
+
+        // The position and the distance from it of each interpolated column are the same in all the rows
+        final int[] xPositions = new int[wDst2];
+        final double[] xDistances = new double[wDst2];
+        for (int j = 0; j < wDst2; j++) {
+            double x = (double) j * (wSrc - 1) / wDst2;
+            xPositions[j] = (int) Math.floor(x);
+            xDistances[j] = x - xPositions[j];
+        }
+
+        // Pass 1 - interpolate rows
+        // buf1 has width of dst2 and height of src. It's fully overwritten, so a pooled array can be used.
+        final ImageBufferPool bufferPool = ImageBufferPool.getInstance();
+        final byte[] buf1 = bufferPool.lease(wDst2 * hSrc * BYTES_PER_PIXEL);
+        try {
+            runRows(hSrc, wDst2, new RowsTask() {
+                @Override
+                public void run(int fromRow, int toRow) {
+                    for (int i = fromRow; i < toRow; i++) {
+                        interpolateRow(src, srcRows.getRowStart(i), wSrc, xPositions, xDistances, buf1, i * rowLength2);
+                    }
+                }
+            });
+
+            BufferedImage dstImage = new BufferedImage(targetWidth, targetHeight, ImageUtils.REQUIRED_IMAGE_TYPE);
+            final byte[] dst = ((DataBufferByte) dstImage.getRaster().getDataBuffer()).getData();
+            if (wM * hM == 1) {
+                // Pass 2 - interpolate columns straight into dst
+                runRows(targetHeight, targetWidth, new RowsTask() {
+                    @Override
+                    public void run(int fromRow, int toRow) {
+                        for (int i = fromRow; i < toRow; i++) {
+                            interpolateColumns(buf1, rowLength2, hSrc, i, hDst2, dst, i * rowLength2);
+                        }
+                    }
+                });
+                return dstImage;
+            }
+
+            // Pass 2 - interpolate columns, only the rows which are averaged into the current row of dst
+            // Pass 3 - average each block of wM x hM pixels into a pixel of dst
+            runRows(targetHeight, wDst2 * hM, new RowsTask() {
+                @Override
+                public void run(int fromRow, int toRow) {
+                    byte[] block = bufferPool.lease(hM * rowLength2);
+                    try {
+                        for (int i = fromRow; i < toRow; i++) {
+                            for (int y = 0; y < hM; y++) {
+                                interpolateColumns(buf1, rowLength2, hSrc, i * hM + y, hDst2, block, y * rowLength2);
+                            }
+                            averageBlocks(block, wDst2, wM, hM, dst, i * targetWidth * BYTES_PER_PIXEL, targetWidth);
+                        }
+                    } finally {
+                        bufferPool.release(block);
+                    }
+                }
+            });
+            return dstImage;
+        } finally {
+            bufferPool.release(buf1);
+        }
+    }
+
+    /**
+     * Runs the task on all the rows, split between the scaling threads when there are enough pixels
+     */
+    private static void runRows(int rows, int rowWidth, RowsTask task) {
+        if ((long) rows * rowWidth < PARALLEL_SCALING_MIN_PIXELS || ScalingExecutorHolder.THREADS == 1) {
+            task.run(0, rows);
+            return;
+        }
+
+        // Tasks which didn't start yet are skipped instead of cancelled, so they can all be waited for
+        final AtomicBoolean isAborted = new AtomicBoolean();
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int fromRow = 0; fromRow < rows; fromRow += ROWS_PER_TASK) {
+                final int from = fromRow;
+                final int to = Math.min(fromRow + ROWS_PER_TASK, rows);
+                final RowsTask rowsTask = task;
+                tasks.add(ScalingExecutorHolder.EXECUTOR.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isAborted.get()) {
+                            rowsTask.run(from, to);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : tasks) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EyesException("Interrupted while scaling image", e);
+        } catch (ExecutionException e) {
+            throw new EyesException("Failed scaling image", e.getCause());
+        } finally {
+            // The tasks write into pooled buffers, which mustn't be released while a task still uses them
+            isAborted.set(true);
+            awaitTasks(tasks);
+        }
+    }
+
+    /**
+     * Waits for all the tasks to finish, even if the thread is interrupted
+     */
+    private static void awaitTasks(List<Future<?>> tasks) {
+        boolean isInterrupted = Thread.interrupted();
+        for (Future<?> future : tasks) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void interpolateRow(byte[] src, int srcPos, int wSrc, int[] xPositions, double[] xDistances,
+                                       byte[] output, int outputPos) {
+        for (int j = 0; j < xPositions.length; j++) {
+            int xPos = xPositions[j];
+            double t = xDistances[j];
+            double t2 = t * t;
+            double t3 = t * t * t;
+            int pixelPos = srcPos + xPos * BYTES_PER_PIXEL;
+            for (int k = 0; k < BYTES_PER_PIXEL; k++) {
+                int kPos = pixelPos + k;
+                int x1 = src[kPos] & 0xFF;
+                int x2 = src[kPos + 4] & 0xFF;
+                int x0 = (xPos > 0) ? src[kPos - 4] & 0xFF : 2 * x1 - x2;
+                int x3 = (xPos < wSrc - 2) ? src[kPos + 8] & 0xFF : 2 * x2 - x1;
+                output[outputPos++] = (byte) interpolateCubic(x0, x1, x2, x3, t, t2, t3);
+            }
+        }
+    }
+
+    /**
+     * Interpolates a row of the image which is hDst2 rows high from the rows of buf1
+     */
+    private static void interpolateColumns(byte[] buf1, int rowLength, int hSrc, int i, int hDst2,
+                                           byte[] output, int outputPos) {
+        double y = (double) i * (hSrc - 1) / hDst2;
+        int yPos = (int) Math.floor(y);
+        double t = y - yPos;
+        double t2 = t * t;
+        double t3 = t * t * t;
+        int rowPos = yPos * rowLength;
+        for (int p = 0; p < rowLength; p++) {
+            int kPos = rowPos + p;
+            int y1 = buf1[kPos] & 0xFF;
+            int y2 = buf1[kPos + rowLength] & 0xFF;
+            int y0 = (yPos > 0) ? buf1[kPos - rowLength] & 0xFF : 2 * y1 - y2;
+            int y3 = (yPos < hSrc - 2) ? buf1[kPos + 2 * rowLength] & 0xFF : 2 * y2 - y1;
+            output[outputPos + p] = (byte) interpolateCubic(y0, y1, y2, y3, t, t2, t3);
+        }
+    }
+
+    private static void averageBlocks(byte[] block, int wDst2, int wM, int hM, byte[] output, int outputPos,
+                                      int targetWidth) {
+        int m = wM * hM;
+        for (int j = 0; j < targetWidth; j++) {
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            int a = 0;
+            for (int y = 0; y < hM; y++) {
+                int xyPos = (y * wDst2 + j * wM) * BYTES_PER_PIXEL;
+                for (int x = 0; x < wM; x++) {
+                    r += block[xyPos] & 0xFF;
+                    g += block[xyPos + 1] & 0xFF;
+                    b += block[xyPos + 2] & 0xFF;
+                    a += block[xyPos + 3] & 0xFF;
+                    xyPos += BYTES_PER_PIXEL;
+                }
+            }
+
+            output[outputPos++] = (byte) (r / m);
+            output[outputPos++] = (byte) (g / m);
+            output[outputPos++] = (byte) (b / m);
+            output[outputPos++] = (byte) (a / m);
+        }
+    }
+
+    private static int interpolateCubic(int x0, int x1, int x2, int x3, double t, double t2, double t3) {
+        int a0 = x3 - x2 - x0 + x1;
+        int a1 = x0 - x1 - a0;
+        int a2 = x2 - x0;
+        double value = (a0 * t3) + (a1 * t2) + (a2 * t) + (x1);
+        return value <= 0 ? 0 : value >= 255 ? 255 : (int) value;
+    }
+}
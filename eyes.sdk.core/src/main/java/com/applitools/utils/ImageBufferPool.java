@@ -0,0 +1,157 @@
+package com.applitools.utils;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of the byte arrays of intermediate images, like the rows which are interpolated while an image is scaled.
+ * These arrays are large and die young, and every screenshot part needs arrays of the same sizes,
+ * so reusing them saves allocating large objects for every part.
+ * The arrays are kept by their size, up to a limit on the total size of the pooled arrays.
+ * They are only softly referenced, so the garbage collector reclaims idle arrays when the heap runs low.
+ */
+public class ImageBufferPool {
+    public static final String MAX_POOLED_BYTES_ENV = "APPLITOOLS_IMAGE_BUFFER_POOL_MAX_BYTES";
+    public static final long DEFAULT_MAX_POOLED_BYTES = 32 * 1024 * 1024;
+
+    private static final ImageBufferPool instance = new ImageBufferPool(getMaxPooledBytesFromEnvironment());
+
+    private volatile long maxPooledBytes;
+
+    // The size of arrays which were reclaimed is counted until their reference is removed from the pool
+    private final Map<Integer, Deque<SoftReference<byte[]>>> buffers = new HashMap<>();
+    private long pooledBytes = 0;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong reusedBytes = new AtomicLong();
+
+    public ImageBufferPool(long maxPooledBytes) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxPooledBytes, "maxPooledBytes");
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public static ImageBufferPool getInstance() {
+        return instance;
+    }
+
+    private static long getMaxPooledBytesFromEnvironment() {
+        String maxPooledBytesValue = GeneralUtils.getEnvString(MAX_POOLED_BYTES_ENV);
+        if (maxPooledBytesValue != null) {
+            try {
+                return Math.max(0, Long.parseLong(maxPooledBytesValue.trim()));
+            } catch (NumberFormatException ignored) {
+                // Invalid values are ignored, so a typo doesn't fail the tests
+            }
+        }
+        return DEFAULT_MAX_POOLED_BYTES;
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Changes the limit on the total size of the pooled arrays. Arrays beyond the new limit are dropped.
+     * Setting it to 0 disables the pool.
+     */
+    public void setMaxPooledBytes(long maxPooledBytes) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxPooledBytes, "maxPooledBytes");
+        synchronized (buffers) {
+            this.maxPooledBytes = maxPooledBytes;
+            if (pooledBytes > maxPooledBytes) {
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Drops all the pooled arrays
+     */
+    public void clear() {
+        synchronized (buffers) {
+            buffers.clear();
+            pooledBytes = 0;
+        }
+    }
+
+    /**
+     * Leases an array of the given size. The array isn't cleared, so it may hold the data of a previous lease.
+     * It should be released once it isn't used anymore, and mustn't be used after that.
+     */
+    public byte[] lease(int size) {
+        ArgumentGuard.greaterThanOrEqualToZero(size, "size");
+        synchronized (buffers) {
+            Deque<SoftReference<byte[]>> sameSizeBuffers = buffers.get(size);
+            while (sameSizeBuffers != null && !sameSizeBuffers.isEmpty()) {
+                byte[] buffer = sameSizeBuffers.pop().get();
+                pooledBytes -= size;
+                if (buffer != null) {
+                    reusedBytes.addAndGet(size);
+                    return buffer;
+                }
+            }
+        }
+
+        allocatedBytes.addAndGet(size);
+        return new byte[size];
+    }
+
+    /**
+     * Returns a leased array to the pool. If the pool is full, arrays of other sizes are dropped to make room for it.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length > maxPooledBytes) {
+            return;
+        }
+
+        synchronized (buffers) {
+            Iterator<Map.Entry<Integer, Deque<SoftReference<byte[]>>>> entries = buffers.entrySet().iterator();
+            while (pooledBytes + buffer.length > maxPooledBytes && entries.hasNext()) {
+                Map.Entry<Integer, Deque<SoftReference<byte[]>>> entry = entries.next();
+                if (entry.getKey() != buffer.length) {
+                    pooledBytes -= (long) entry.getKey() * entry.getValue().size();
+                    entries.remove();
+                }
+            }
+
+            if (pooledBytes + buffer.length > maxPooledBytes) {
+                return;
+            }
+
+            Deque<SoftReference<byte[]>> sameSizeBuffers = buffers.get(buffer.length);
+            if (sameSizeBuffers == null) {
+                sameSizeBuffers = new ArrayDeque<>();
+                buffers.put(buffer.length, sameSizeBuffers);
+            }
+            sameSizeBuffers.push(new SoftReference<>(buffer));
+            pooledBytes += buffer.length;
+        }
+    }
+
+    /**
+     * @return The total size of the arrays which were allocated because there was no pooled array of their size
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return The total size of the leases which were served by pooled arrays
+     */
+    public long getReusedBytes() {
+        return reusedBytes.get();
+    }
+
+    /**
+     * @return The total size of the arrays which are currently in the pool
+     */
+    public long getPooledBytes() {
+        synchronized (buffers) {
+            return pooledBytes;
+        }
+    }
+}
@@ -3,9 +3,9 @@
  */
 package com.applitools.utils;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 import java.io.*;
 import java.util.Arrays;
 import java.util.zip.Deflater;
@@ -35,115 +35,61 @@ public class ImageDeltaCompressor {
     }
 
     /**
-     * Encapsulates a result for the CompareAndCopyBlockChannelData function.
+     * Compares a block of pixels between the source and target images, for a single channel.
+     * @param sourcePixels The pixels of the source image.
+     * @param targetPixels The pixels of the target image.
+     * @param stride The length of an image row in bytes.
+     * @param pixelLength Bytes per pixel. Since pixel might include alpha.
+     * @param blockOffset The offset of the block's first pixel.
+     * @param blockWidth The actual width of the block in pixels.
+     * @param blockHeight The actual height of the block in pixels.
+     * @param channel The channel for which we compare the blocks
+     * @return Whether the source and target blocks are identical.
      */
-    private static class CompareAndCopyBlockChannelDataResult {
-        private boolean isIdentical;
-        private byte[] buffer;
-
-        /**
-         *
-         * @param isIdentical Whether or not the target block was identical to
-         *                    the source block.
-         * @param buffer The target block's pixel values for a specific channel.
-         */
-        public CompareAndCopyBlockChannelDataResult(boolean isIdentical,
-                byte[] buffer) {
-            this.isIdentical = isIdentical;
-            this.buffer = buffer;
-        }
-
-        /**
-         * @return Whether or not the target block was identical to the
-         * source block.
-         */
-        public boolean getIsIdentical() {
-            return isIdentical;
-        }
-
-        /**
-         * @return The target block's pixel values for a specific channel.
-         */
-        public byte[] getBuffer() {
-            return buffer;
+    private static boolean isBlockChannelIdentical(byte[] sourcePixels, byte[] targetPixels, int stride,
+                                                   int pixelLength, int blockOffset, int blockWidth,
+                                                   int blockHeight, int channel) {
+        int rowOffset = blockOffset + channel;
+        for (int h = 0; h < blockHeight; ++h) {
+            int offset = rowOffset;
+            for (int w = 0; w < blockWidth; ++w) {
+                if (sourcePixels[offset] != targetPixels[offset]) {
+                    return false;
+                }
+                offset += pixelLength;
+            }
+            rowOffset += stride;
         }
+        return true;
     }
 
     /**
-     * Computes the width and height of the image model contained in the block
-     * at the input column and row.
-     * @param imageSize The image size in pixels.
-     * @param blockSize The block size for which we would like to compute the
-     *                  image model width and height.
-     * @param blockColumn The block column index
-     * @param blockRow The block row index
-     * @return The width and height of the image model contained in the block.
+     * Copies a single channel of a block of the target image.
+     * @return The number of bytes copied into the channel bytes.
      */
-    private static Dimension getActualBlockSize(Dimension imageSize,
-            int blockSize, int blockColumn, int blockRow) {
-        int actualWidth = Math.min(imageSize.width - (blockColumn * blockSize),
-                blockSize);
-        int actualHeight = Math.min(imageSize.height - (blockRow * blockSize),
-                                blockSize);
-
-        return new Dimension(actualWidth, actualHeight);
-    }
-
-    /**
-     * Compares a block of pixels between the source and target images.
-     * @param sourcePixels The pixels of the source block.
-     * @param targetPixels The pixels of the target block
-     * @param imageSize The image size in pixels.
-     * @param pixelLength Bytes per pixel. Since pixel might include alpha.
-     * @param blockSize The block size in pixels.
-     * @param blockColumn The column index of the block to compare.
-     * @param blockRow The row index of the block to compare.
-     * @param channel The channel for which we compare the blocks
-     * @return Whether the source and target blocks are identical,
-     * and a copy of the target block's channel bytes.
-     */
-    @SuppressWarnings("SpellCheckingInspection")
-    private static CompareAndCopyBlockChannelDataResult
-            CompareAndCopyBlockChannelData(
-                byte[] sourcePixels, byte[] targetPixels,
-                Dimension imageSize, int pixelLength, int blockSize,
-            int blockColumn, int blockRow, int channel) {
-
-        boolean isIdentical = true; // initial default
-
-        // Getting the actual amount of model in the block we wish to copy
-        Dimension actualBlockSize =
-                getActualBlockSize(imageSize, blockSize, blockColumn, blockRow);
-
-        int actualBlockHeight = actualBlockSize.height;
-        int actualBlockWidth = actualBlockSize.width;
-
-        int stride = imageSize.width * pixelLength;
-
-        // The number of bytes actually contained in the block for the
-        // current channel (might be less than blockSize*blockSize)
-        byte[] channelBytes = new byte[actualBlockHeight*actualBlockWidth];
+    private static int copyBlockChannel(byte[] targetPixels, int stride, int pixelLength, int blockOffset,
+                                        int blockWidth, int blockHeight, int channel, byte[] channelBytes) {
         int channelBytesOffset = 0;
-
-        // Actually comparing and copying the pixels
-        byte sourceByte, targetByte;
-        for (int h = 0; h < actualBlockHeight; ++h) {
-            int offset = (((blockSize * blockRow) + h) * stride) +
-                    (blockSize * blockColumn * pixelLength) + channel;
-            for (int w = 0; w < actualBlockWidth; ++w) {
-                sourceByte = sourcePixels[offset];
-                targetByte = targetPixels[offset];
-                if (sourceByte != targetByte) {
-                    isIdentical = false;
-                }
-
-                channelBytes[channelBytesOffset++] = targetByte;
+        int rowOffset = blockOffset + channel;
+        for (int h = 0; h < blockHeight; ++h) {
+            int offset = rowOffset;
+            for (int w = 0; w < blockWidth; ++w) {
+                channelBytes[channelBytesOffset++] = targetPixels[offset];
                 offset += pixelLength;
             }
+            rowOffset += stride;
         }
+        return channelBytesOffset;
+    }
 
-        return new CompareAndCopyBlockChannelDataResult(isIdentical,
-                channelBytes);
+    /**
+     * @return Whether the compressor can read the pixels of the image straight from its data buffer.
+     */
+    private static boolean hasPlainPixelData(BufferedImage image, int pixelLength) {
+        Raster raster = image.getRaster();
+        return raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight() * pixelLength;
     }
 
     /**
@@ -172,23 +118,29 @@ public class ImageDeltaCompressor {
             return targetEncoded;
         }
 
+        // The number of bytes comprising a pixel (depends if there's an
+        // Alpha channel).
+        int pixelLength = (target.getAlphaRaster() != null) ? 4 : 3;
+        if (source.getType() != target.getType() || !hasPlainPixelData(target, pixelLength)
+                || !hasPlainPixelData(source, pixelLength)) {
+            return targetEncoded;
+        }
+
         // IMPORTANT: Notice that the pixel bytes are (A)BGR!
         byte[] targetPixels =
                 ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
         byte[] sourcePixels =
                 ((DataBufferByte) source.getRaster().getDataBuffer()).getData();
 
-        // The number of bytes comprising a pixel (depends if there's an
-        // Alpha channel).
-        int pixelLength = (target.getAlphaRaster() != null) ? 4 : 3;
-        Dimension imageSize = new Dimension(target.getWidth(),
-                                            target.getHeight());
+        int width = target.getWidth();
+        int height = target.getHeight();
+        int stride = width * pixelLength;
 
         // Calculating how many block columns and rows we've got.
-        int blockColumnsCount = (target.getWidth() / blockSize)
-                + ((target.getWidth() % blockSize) == 0 ? 0 : 1);
-        int blockRowsCount = (target.getHeight() / blockSize)
-                + ((target.getHeight() % blockSize) == 0 ? 0 : 1);
+        int blockColumnsCount = (width / blockSize)
+                + ((width % blockSize) == 0 ? 0 : 1);
+        int blockRowsCount = (height / blockSize)
+                + ((height % blockSize) == 0 ? 0 : 1);
 
         // We'll use a stream for the compression.
         ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
@@ -198,60 +150,66 @@ public class ImageDeltaCompressor {
         DataOutputStream resultDataOutputStream =
                 new DataOutputStream(resultCountingStream);
         // This will be used for doing actual model compression
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
         DeflaterOutputStream compressed =
-                new DeflaterOutputStream(resultCountingStream,
-                        new Deflater(Deflater.BEST_COMPRESSION,true));
+                new DeflaterOutputStream(resultCountingStream, deflater);
 
         DataOutputStream compressedDos = new DataOutputStream(compressed);
 
-        // Writing the header
-        resultStream.write(PREAMBLE, 0, PREAMBLE.length);
-        resultStream.write(COMPRESS_BY_RAW_BLOCKS_FORMAT);
-        // since we don't have a source ID, we write 0 length (Big endian).
-        resultDataOutputStream.writeShort(0);
-
-        // Writing the block size (Big endian)
-        resultDataOutputStream.writeShort(blockSize);
-
-        CompareAndCopyBlockChannelDataResult compareResult;
-        for (int channel = 0; channel < 3; ++channel) {
-
-            // The image is RGB, so all that's left is to skip the Alpha
-            // channel if there is one.
-            int actualChannelIndex = (pixelLength == 4) ? channel + 1 : channel;
-
-            int blockNumber = 0;
-            for (int blockRow = 0; blockRow < blockRowsCount; ++blockRow) {
-                for (int blockColumn = 0; blockColumn < blockColumnsCount;
-                        ++blockColumn) {
+        // A single buffer for the channel bytes of all the blocks
+        byte[] channelBytes = new byte[blockSize * blockSize];
 
-                    compareResult = CompareAndCopyBlockChannelData
-                            (sourcePixels, targetPixels, imageSize,
-                                    pixelLength, blockSize, blockColumn,
-                                    blockRow, actualChannelIndex);
-
-                    if (!compareResult.getIsIdentical()) {
-                        compressed.write(channel);
-                        compressedDos.writeInt(blockNumber); // Big endian
-                        byte[] channelBytes = compareResult.getBuffer();
-                        compressed.write(channelBytes, 0, channelBytes.length);
-
-                        // If the number of bytes already written is greater
-                        // then the number of bytes for the uncompressed
-                        // target, we just return the uncompressed target.
-                        if (resultCountingStream.getBytesCount()
-                            > targetEncoded.length) {
-                            compressedDos.close();
-                            return Arrays.copyOf(targetEncoded,
-                                                    targetEncoded.length);
+        try {
+            // Writing the header
+            resultStream.write(PREAMBLE, 0, PREAMBLE.length);
+            resultStream.write(COMPRESS_BY_RAW_BLOCKS_FORMAT);
+            // since we don't have a source ID, we write 0 length (Big endian).
+            resultDataOutputStream.writeShort(0);
+
+            // Writing the block size (Big endian)
+            resultDataOutputStream.writeShort(blockSize);
+
+            for (int channel = 0; channel < 3; ++channel) {
+
+                // The image is RGB, so all that's left is to skip the Alpha
+                // channel if there is one.
+                int actualChannelIndex = (pixelLength == 4) ? channel + 1 : channel;
+
+                int blockNumber = 0;
+                for (int blockRow = 0; blockRow < blockRowsCount; ++blockRow) {
+                    int blockHeight = Math.min(height - (blockRow * blockSize), blockSize);
+                    for (int blockColumn = 0; blockColumn < blockColumnsCount;
+                            ++blockColumn) {
+
+                        int blockWidth = Math.min(width - (blockColumn * blockSize), blockSize);
+                        int blockOffset = (blockSize * blockRow * stride) + (blockSize * blockColumn * pixelLength);
+                        if (!isBlockChannelIdentical(sourcePixels, targetPixels, stride, pixelLength,
+                                blockOffset, blockWidth, blockHeight, actualChannelIndex)) {
+                            compressed.write(channel);
+                            compressedDos.writeInt(blockNumber); // Big endian
+                            int length = copyBlockChannel(targetPixels, stride, pixelLength, blockOffset,
+                                    blockWidth, blockHeight, actualChannelIndex, channelBytes);
+                            compressed.write(channelBytes, 0, length);
+
+                            // If the number of bytes already written is greater
+                            // then the number of bytes for the uncompressed
+                            // target, we just return the uncompressed target.
+                            if (resultCountingStream.getBytesCount()
+                                > targetEncoded.length) {
+                                return Arrays.copyOf(targetEncoded,
+                                                        targetEncoded.length);
+                            }
                         }
-                    }
 
-                    ++blockNumber;
+                        ++blockNumber;
+                    }
                 }
             }
+            compressedDos.close(); // flushing + closing the compression.
+        } finally {
+            // The deflater was created here, so the stream doesn't release its native memory
+            deflater.end();
         }
-        compressedDos.close(); // flushing + closing the compression.
 
         if (resultCountingStream.getBytesCount() > targetEncoded.length) {
             return targetEncoded;
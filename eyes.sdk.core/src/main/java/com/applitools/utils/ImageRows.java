@@ -0,0 +1,109 @@
+package com.applitools.utils;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+
+/**
+ * Reads the rows of an interleaved raster with 4 bytes per pixel, like the raster of an image of type
+ * {@link ImageUtils#REQUIRED_IMAGE_TYPE}, a sub image of one, or a {@link MappedImageDataBuffer} image.
+ */
+class ImageRows {
+    static final int BYTES_PER_PIXEL = 4;
+
+    // The band of each byte of a pixel, in the order of the row which is read
+    private static final int[] ABGR_BANDS = {3, 2, 1, 0};
+    private static final int[] RGBA_BANDS = {0, 1, 2, 3};
+
+    final int width;
+    final int height;
+    final int rowLength;
+
+    private final byte[] data;
+    private final MappedImageDataBuffer mappedData;
+    private final int[] bandOffsets;
+    private final int scanlineStride;
+    private final int firstRowStart;
+
+    ImageRows(Raster raster) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        this.data = dataBuffer instanceof DataBufferByte ? ((DataBufferByte) dataBuffer).getData() : null;
+        this.mappedData = dataBuffer instanceof MappedImageDataBuffer ? (MappedImageDataBuffer) dataBuffer : null;
+        this.bandOffsets = sampleModel.getBandOffsets();
+        this.scanlineStride = sampleModel.getScanlineStride();
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+        this.rowLength = width * BYTES_PER_PIXEL;
+
+        // Sub images share the data of their parent, so the position is translated to the parent's coordinates
+        this.firstRowStart = dataBuffer.getOffset()
+                + (raster.getMinY() - raster.getSampleModelTranslateY()) * scanlineStride
+                + (raster.getMinX() - raster.getSampleModelTranslateX()) * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * @return The data of the raster, or null if it isn't held in a byte array
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return The index of the first byte of the row in the data of the raster
+     */
+    int getRowStart(int y) {
+        return firstRowStart + y * scanlineStride;
+    }
+
+    /**
+     * Reads a row in the byte order of an image of type {@link ImageUtils#REQUIRED_IMAGE_TYPE}
+     */
+    void readAbgrRow(int y, byte[] row) {
+        readRow(y, row, ABGR_BANDS);
+    }
+
+    /**
+     * Reads a row in the byte order of PNG
+     */
+    void readRgbaRow(int y, byte[] row) {
+        readRow(y, row, RGBA_BANDS);
+    }
+
+    private void readRow(int y, byte[] row, int[] bands) {
+        int first = bandOffsets[bands[0]];
+        int second = bandOffsets[bands[1]];
+        int third = bandOffsets[bands[2]];
+        int fourth = bandOffsets[bands[3]];
+        boolean isSameOrder = first == 0 && second == 1 && third == 2 && fourth == 3;
+
+        int source = getRowStart(y);
+        byte[] pixels = data;
+        if (mappedData != null) {
+            mappedData.read(source, row, 0, rowLength);
+            if (isSameOrder) {
+                return;
+            }
+
+            // The pixels are reordered in place, each pixel is read before it's written
+            pixels = row;
+            source = 0;
+        } else if (isSameOrder) {
+            System.arraycopy(data, source, row, 0, rowLength);
+            return;
+        }
+
+        for (int i = 0; i < rowLength; i += BYTES_PER_PIXEL) {
+            byte firstByte = pixels[source + first];
+            byte secondByte = pixels[source + second];
+            byte thirdByte = pixels[source + third];
+            byte fourthByte = pixels[source + fourth];
+            row[i] = firstByte;
+            row[i + 1] = secondByte;
+            row[i + 2] = thirdByte;
+            row[i + 3] = fourthByte;
+            source += BYTES_PER_PIXEL;
+        }
+    }
+}
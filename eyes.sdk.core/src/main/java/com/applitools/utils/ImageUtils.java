@@ -5,22 +5,30 @@ package com.applitools.utils;
 
 import com.applitools.eyes.*;
 import org.apache.commons.codec.binary.Base64;
-import org.imgscalr.Scalr;
+import org.apache.commons.codec.binary.Hex;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBufferByte;
 import java.awt.image.Raster;
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 public class ImageUtils {
 
     @SuppressWarnings("WeakerAccess")
     public static final int REQUIRED_IMAGE_TYPE = BufferedImage.TYPE_4BYTE_ABGR;
 
+    private static final int MAX_PNG_BUFFER_ESTIMATE = 32 * 1024 * 1024;
+    private static final int IMAGE_READ_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile PngEncoder pngEncoder = PngEncoder.fromEnvironment();
+
     public static BufferedImage normalizeImageType(BufferedImage image) {
         if (image.getType() == REQUIRED_IMAGE_TYPE) {
             return image;
@@ -29,6 +37,18 @@ public class ImageUtils {
         return ImageUtils.copyImageWithType(image, REQUIRED_IMAGE_TYPE);
     }
 
+    /**
+     * Sets the encoder used for encoding images as PNG, for tuning its compression level and filter strategy.
+     */
+    public static void setPngEncoder(PngEncoder encoder) {
+        ArgumentGuard.notNull(encoder, "encoder");
+        pngEncoder = encoder;
+    }
+
+    public static PngEncoder getPngEncoder() {
+        return pngEncoder;
+    }
+
     /**
      * Encodes a given image as PNG.
      * @param image The image to encode.
@@ -38,25 +58,26 @@ public class ImageUtils {
 
         ArgumentGuard.notNull(image, "image");
 
-        byte[] encodedImage; // PNG representation.
-        ByteArrayOutputStream pngBytesStream = new ByteArrayOutputStream();
+        // Screenshots compress well, so a fraction of the raw size avoids most of the buffer growing
+        long estimatedSize = (long) image.getWidth() * image.getHeight() / 2 + 1024;
+        ByteArrayOutputStream pngBytesStream = new ByteArrayOutputStream((int) Math.min(estimatedSize, MAX_PNG_BUFFER_ESTIMATE));
+        encodeAsPng(image, pngBytesStream);
+        return pngBytesStream.toByteArray();
+    }
 
+    /**
+     * Encodes a given image as PNG straight into the given stream, without buffering the whole PNG.
+     * @param image        The image to encode.
+     * @param outputStream The stream to write to. It isn't closed.
+     */
+    public static void encodeAsPng(BufferedImage image, OutputStream outputStream) {
+        ArgumentGuard.notNull(image, "image");
         try {
-            // Get the clipped image in PNG encoding.
-            ImageIO.write(image, "png", pngBytesStream);
-            pngBytesStream.flush();
-            encodedImage = pngBytesStream.toByteArray();
+            pngEncoder.encode(image, outputStream);
+            outputStream.flush();
         } catch (IOException e) {
             throw new EyesException("Failed to encode image", e);
-        } finally {
-            try {
-                pngBytesStream.close();
-            } catch (IOException e) {
-                //noinspection ThrowFromFinallyBlock
-                throw new EyesException("Failed to close png byte stream", e);
-            }
         }
-        return encodedImage;
     }
 
     /**
@@ -117,9 +138,7 @@ public class ImageUtils {
             EyesException {
         BufferedImage image;
         try {
-            image = ImageIO.read(stream);
-            // Make sure the image is of the correct type
-            image = normalizeImageType(image);
+            image = readImage(stream);
         } catch (IOException e) {
             throw new EyesException(
                     "Failed to to load the image from stream.", e);
@@ -139,10 +158,14 @@ public class ImageUtils {
             EyesException {
         ArgumentGuard.notNullOrEmpty(image64, "image64");
 
-        // Get the image bytes
-        byte[] imageBytes =
-                Base64.decodeBase64(image64.getBytes(Charset.forName("UTF-8")));
-        return imageFromBytes(imageBytes);
+        // The image bytes are decoded while the image is read, instead of being decoded into an array first
+        BufferedImage image;
+        try {
+            image = readImage(new BufferedInputStream(new Base64StringInputStream(image64), IMAGE_READ_BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new EyesException("Failed to create buffered image!", e);
+        }
+        return image;
     }
 
     /**
@@ -169,16 +192,32 @@ public class ImageUtils {
         try {
             ByteArrayInputStream screenshotStream =
                     new ByteArrayInputStream(imageBytes);
-            image = ImageIO.read(screenshotStream);
+            image = readImage(screenshotStream);
             screenshotStream.close();
-            // Make sure the image is of the correct type
-            image = normalizeImageType(image);
         } catch (IOException e) {
             throw new EyesException("Failed to create buffered image!", e);
         }
         return image;
     }
 
+    /**
+     * Reads an image of type {@link #REQUIRED_IMAGE_TYPE} from the stream.
+     * The PNGs which {@link PngDecoder} supports are decoded straight into the image, and the rest are read with
+     * {@link ImageIO} and converted.
+     */
+    private static BufferedImage readImage(InputStream stream) throws IOException {
+        InputStream markedStream = stream.markSupported() ? stream : new BufferedInputStream(stream, IMAGE_READ_BUFFER_SIZE);
+        markedStream.mark(PngDecoder.HEADER_LENGTH);
+        BufferedImage image = PngDecoder.decode(markedStream);
+        if (image != null) {
+            return image;
+        }
+
+        markedStream.reset();
+        // Make sure the image is of the correct type
+        return normalizeImageType(ImageIO.read(markedStream));
+    }
+
     /**
      * Get a copy of the part of the image given by region.
      * @param image  The image from which to get the part.
@@ -187,17 +226,45 @@ public class ImageUtils {
      */
     public static BufferedImage getImagePart(BufferedImage image,
                                              Region region) {
+        // A sub image shares the pixels of the image, so code which reads its data buffer directly, instead of
+        // through its raster, gets the pixels of the whole image. The part is copied into an image of its own.
+        return copyImage(getImagePartView(image, region));
+    }
+
+    /**
+     * Get a view of the part of the image given by region, without copying its pixels.
+     * The view shares the pixels of the image, so it should only be used where neither of them is changed
+     * while the view is used, and its pixels should only be read through its raster.
+     * @param image  The image from which to get the part.
+     * @param region The region of the image which the view shows.
+     * @return The view of the part of the image.
+     */
+    public static BufferedImage getImagePartView(BufferedImage image,
+                                                 Region region) {
         ArgumentGuard.notNull(image, "image");
+        ArgumentGuard.notNull(region, "region");
+        return image.getSubimage(region.getLeft(), region.getTop(), region.getWidth(), region.getHeight());
+    }
+
+    /**
+     * Copies the pixels of the image, a row at a time, into a new image of type {@link #REQUIRED_IMAGE_TYPE}
+     */
+    private static BufferedImage copyImage(BufferedImage image) {
+        Raster raster = image.getRaster();
+        boolean isMapped = MappedImageDataBuffer.isMapped(image);
+        if (image.getType() != REQUIRED_IMAGE_TYPE && !isMapped) {
+            return copyImageWithType(image, REQUIRED_IMAGE_TYPE);
+        }
 
-        // Get the clipped region as a BufferedImage.
-        BufferedImage imagePart = image.getSubimage(
-                region.getLeft(), region.getTop(), region.getWidth(),
-                region.getHeight());
-        // IMPORTANT We copy the image this way because just using getSubImage
-        // created a later problem (maybe an actual Java bug): the pixels
-        // weren't what they were supposed to be.
-        byte[] imagePartBytes = encodeAsPng(imagePart);
-        return imageFromBytes(imagePartBytes);
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), REQUIRED_IMAGE_TYPE);
+        byte[] copyData = ((DataBufferByte) copy.getRaster().getDataBuffer()).getData();
+        ImageRows rows = new ImageRows(raster);
+        byte[] row = new byte[rows.rowLength];
+        for (int y = 0; y < rows.height; y++) {
+            rows.readAbgrRow(y, row);
+            System.arraycopy(row, 0, copyData, y * rows.rowLength, rows.rowLength);
+        }
+        return copy;
     }
 
     /**
@@ -246,16 +313,176 @@ public class ImageUtils {
         return normalizeImageType(rotatedImage);
     }
 
+    /**
+     * Computes the SHA-256 hash of the size and the pixels of the image, straight from its raster.
+     * Unlike a hash of the encoded image, it doesn't depend on the encoder, and it doesn't need the image encoded.
+     * @param image The image to hash.
+     * @return The hash as a hex string. Images with the same size and pixels have the same hash.
+     */
+    public static String getImageHash(BufferedImage image) {
+        ArgumentGuard.notNull(image, "image");
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new EyesException("Failed getting a SHA-256 digest", e);
+        }
+
+        if (!MappedImageDataBuffer.isMapped(image)) {
+            image = normalizeImageType(image);
+        }
+
+        digest.update(ByteBuffer.allocate(8).putInt(image.getWidth()).putInt(image.getHeight()).array());
+
+        // Mapped images are read in the byte order of the other images, so both hash the same
+        ImageRows rows = new ImageRows(image.getRaster());
+        byte[] row = new byte[rows.rowLength];
+        for (int y = 0; y < rows.height; y++) {
+            rows.readAbgrRow(y, row);
+            digest.update(row);
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
     public static boolean areImagesEqual(BufferedImage img1, BufferedImage img2) {
-        if (img1.getWidth() == img2.getWidth() && img1.getHeight() == img2.getHeight()) {
-            for (int x = 0; x < img1.getWidth(); x++) {
-                for (int y = 0; y < img1.getHeight(); y++) {
-                    if (img1.getRGB(x, y) != img2.getRGB(x, y))
-                        return false;
+        if (img1.getWidth() != img2.getWidth() || img1.getHeight() != img2.getHeight()) {
+            return false;
+        }
+
+        return areImagesEqual(img1, img2, new Region(0, 0, img1.getWidth(), img1.getHeight()));
+    }
+
+    /**
+     * Compares the same region in two images.
+     * @param img1   The first image.
+     * @param img2   The second image.
+     * @param region The region to compare, which must be contained in both images.
+     * @return true if all the pixels in the region are equal, false otherwise.
+     */
+    public static boolean areImagesEqual(BufferedImage img1, BufferedImage img2, Region region) {
+        ArgumentGuard.notNull(img1, "img1");
+        ArgumentGuard.notNull(img2, "img2");
+        ArgumentGuard.notNull(region, "region");
+        if (region.getLeft() < 0 || region.getTop() < 0
+                || region.getRight() > Math.min(img1.getWidth(), img2.getWidth())
+                || region.getBottom() > Math.min(img1.getHeight(), img2.getHeight())) {
+            throw new IllegalArgumentException(String.format("Region %s is out of the images bounds", region));
+        }
+
+        if (region.getWidth() <= 0 || region.getHeight() <= 0) {
+            return true;
+        }
+
+        if (img1.getType() == REQUIRED_IMAGE_TYPE && img2.getType() == REQUIRED_IMAGE_TYPE) {
+            Raster raster1 = img1.getRaster();
+            Raster raster2 = img2.getRaster();
+            if (raster1.getDataBuffer() instanceof DataBufferByte && raster2.getDataBuffer() instanceof DataBufferByte
+                    && raster1.getSampleModel() instanceof ComponentSampleModel
+                    && raster2.getSampleModel() instanceof ComponentSampleModel) {
+                return areRastersEqual(raster1, raster2, region);
+            }
+        }
+
+        // Row by row, so the pixels are read in the order they are stored
+        int width = region.getWidth();
+        int[] row1 = new int[width];
+        int[] row2 = new int[width];
+        for (int y = region.getTop(); y < region.getBottom(); y++) {
+            img1.getRGB(region.getLeft(), y, width, 1, row1, 0, width);
+            img2.getRGB(region.getLeft(), y, width, 1, row2, 0, width);
+            if (!Arrays.equals(row1, row2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the blocks of the images which have different pixels. Counting stops once there are more than
+     * {@code maxChangedBlocks} of them, so images which are very different are compared quickly.
+     * @param img1             The first image.
+     * @param img2             The second image, of the same size as the first.
+     * @param blockSize        The width and height of the blocks.
+     * @param maxChangedBlocks The number of different blocks after which counting stops.
+     * @return The number of different blocks, or {@code maxChangedBlocks + 1} if there are more of them.
+     */
+    public static int countChangedBlocks(BufferedImage img1, BufferedImage img2, int blockSize, int maxChangedBlocks) {
+        ArgumentGuard.notNull(img1, "img1");
+        ArgumentGuard.notNull(img2, "img2");
+        ArgumentGuard.greaterThanZero(blockSize, "blockSize");
+        ArgumentGuard.greaterThanOrEqualToZero(maxChangedBlocks, "maxChangedBlocks");
+        int width = img1.getWidth();
+        int height = img1.getHeight();
+        if (width != img2.getWidth() || height != img2.getHeight()) {
+            throw new IllegalArgumentException("The images are of different sizes");
+        }
+
+        int changedBlocks = 0;
+        for (int top = 0; top < height; top += blockSize) {
+            for (int left = 0; left < width; left += blockSize) {
+                Region block = new Region(left, top, Math.min(blockSize, width - left), Math.min(blockSize, height - top));
+                if (!areImagesEqual(img1, img2, block) && ++changedBlocks > maxChangedBlocks) {
+                    return changedBlocks;
                 }
             }
-        } else {
-            return false;
+        }
+        return changedBlocks;
+    }
+
+    /**
+     * Compares the backing bytes of two interleaved rasters of the same layout, without going through the color model.
+     */
+    private static boolean areRastersEqual(Raster raster1, Raster raster2, Region region) {
+        ComponentSampleModel sampleModel1 = (ComponentSampleModel) raster1.getSampleModel();
+        ComponentSampleModel sampleModel2 = (ComponentSampleModel) raster2.getSampleModel();
+        int pixelStride = sampleModel1.getPixelStride();
+        int[] bandOffsets = sampleModel1.getBandOffsets();
+        if (pixelStride != sampleModel2.getPixelStride() || pixelStride != bandOffsets.length
+                || !Arrays.equals(bandOffsets, sampleModel2.getBandOffsets())) {
+            // Not a plain interleaved layout, so the bytes of a row aren't contiguous
+            int width = region.getWidth();
+            int[] row1 = new int[width * bandOffsets.length];
+            int[] row2 = new int[row1.length];
+            for (int y = region.getTop(); y < region.getBottom(); y++) {
+                raster1.getPixels(region.getLeft(), y, width, 1, row1);
+                raster2.getPixels(region.getLeft(), y, width, 1, row2);
+                if (!Arrays.equals(row1, row2)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int firstBandOffset = Integer.MAX_VALUE;
+        for (int bandOffset : bandOffsets) {
+            firstBandOffset = Math.min(firstBandOffset, bandOffset);
+        }
+
+        DataBufferByte dataBuffer1 = (DataBufferByte) raster1.getDataBuffer();
+        DataBufferByte dataBuffer2 = (DataBufferByte) raster2.getDataBuffer();
+        byte[] data1 = dataBuffer1.getData();
+        byte[] data2 = dataBuffer2.getData();
+        int scanlineStride1 = sampleModel1.getScanlineStride();
+        int scanlineStride2 = sampleModel2.getScanlineStride();
+
+        // Sub images share the data of their parent, so the positions are translated to the parent's coordinates
+        int rowStart1 = dataBuffer1.getOffset() + firstBandOffset
+                + (region.getTop() - raster1.getSampleModelTranslateY()) * scanlineStride1
+                + (region.getLeft() - raster1.getSampleModelTranslateX()) * pixelStride;
+        int rowStart2 = dataBuffer2.getOffset() + firstBandOffset
+                + (region.getTop() - raster2.getSampleModelTranslateY()) * scanlineStride2
+                + (region.getLeft() - raster2.getSampleModelTranslateX()) * pixelStride;
+        int rowLength = region.getWidth() * pixelStride;
+        for (int y = 0; y < region.getHeight(); y++) {
+            for (int i = 0; i < rowLength; i++) {
+                if (data1[rowStart1 + i] != data2[rowStart2 + i]) {
+                    return false;
+                }
+            }
+
+            rowStart1 += scanlineStride1;
+            rowStart2 += scanlineStride2;
         }
         return true;
     }
@@ -344,111 +571,8 @@ public class ImageUtils {
         return normalizeImageType(resizedImage);
     }
 
-    private static int interpolateCubic(int x0, int x1, int x2, int x3, double t) {
-        int a0 = x3 - x2 - x0 + x1;
-        int a1 = x0 - x1 - a0;
-        int a2 = x2 - x0;
-        return (int) Math.max(0, Math.min(255, (a0 * (t * t * t)) + (a1 * (t * t)) + (a2 * t) + (x1)));
-    }
-
     private static BufferedImage scaleImageBicubic(BufferedImage srcImage, int targetWidth, int targetHeight) {
-
-        normalizeImageType(srcImage);
-
-        DataBuffer bufSrc = srcImage.getRaster().getDataBuffer();
-        DataBuffer bufDst = new DataBufferByte(targetWidth * targetHeight * 4);
-
-        int wSrc = srcImage.getWidth();
-        int hSrc = srcImage.getHeight();
-
-        // when dst smaller than src/2, interpolate first to a multiple between 0.5 and 1.0 src, then sum squares
-        int wM = (int) Math.max(1, Math.floor(wSrc / targetWidth));
-        int wDst2 = targetWidth * wM;
-        int hM = (int) Math.max(1, Math.floor(hSrc / targetHeight));
-        int hDst2 = targetHeight * hM;
-
-        int i, j, k, xPos, yPos, kPos, buf1Pos, buf2Pos;
-        double x, y, t;
-
-        // Pass 1 - interpolate rows
-        // buf1 has width of dst2 and height of src
-        DataBuffer buf1 = new DataBufferByte(wDst2 * hSrc * 4);
-        for (i = 0; i < hSrc; i++) {
-            for (j = 0; j < wDst2; j++) {
-                x = (double) j * (wSrc - 1) / wDst2;
-                xPos = (int) Math.floor(x);
-                t = x - xPos;
-                int srcPos = (i * wSrc + xPos) * 4;
-
-                buf1Pos = (i * wDst2 + j) * 4;
-                for (k = 0; k < 4; k++) {
-                    kPos = srcPos + k;
-                    int x0 = (xPos > 0) ? bufSrc.getElem(kPos - 4) : 2 * bufSrc.getElem(kPos) - bufSrc.getElem(kPos + 4);
-                    int x1 = bufSrc.getElem(kPos);
-                    int x2 = bufSrc.getElem(kPos + 4);
-                    int x3 = (xPos < wSrc - 2) ? bufSrc.getElem(kPos + 8) : 2 * bufSrc.getElem(kPos + 4) - bufSrc.getElem(kPos);
-                    buf1.setElem(buf1Pos + k, interpolateCubic(x0, x1, x2, x3, t));
-                }
-            }
-        }
-
-        // Pass 2 - interpolate columns
-        // buf2 has width and height of dst2
-        DataBuffer buf2 = new DataBufferByte(wDst2 * hDst2 * 4);
-        for (i = 0; i < hDst2; i++) {
-            y = (double) i * (hSrc - 1) / hDst2;
-            yPos = (int) Math.floor(y);
-            t = y - yPos;
-            for (j = 0; j < wDst2; j++) {
-                buf1Pos = (yPos * wDst2 + j) * 4;
-                buf2Pos = (i * wDst2 + j) * 4;
-                for (k = 0; k < 4; k++) {
-                    kPos = buf1Pos + k;
-                    int y0 = (yPos > 0) ? buf1.getElem(kPos - wDst2 * 4) : 2 * buf1.getElem(kPos) - buf1.getElem(kPos + wDst2 * 4);
-                    int y1 = buf1.getElem(kPos);
-                    int y2 = buf1.getElem(kPos + wDst2 * 4);
-                    int y3 = (yPos < hSrc - 2) ? buf1.getElem(kPos + wDst2 * 8) : 2 * buf1.getElem(kPos + wDst2 * 4) - buf1.getElem(kPos);
-                    //noinspection SuspiciousNameCombination
-                    buf2.setElem(buf2Pos + k, interpolateCubic(y0, y1, y2, y3, t));
-                }
-            }
-        }
-
-        // Pass 3 - scale to dst
-        int m = wM * hM;
-        if (m > 1) {
-            for (i = 0; i < targetHeight; i++) {
-                for (j = 0; j < targetWidth; j++) {
-                    int r = 0;
-                    int g = 0;
-                    int b = 0;
-                    int a = 0;
-                    for (y = 0; y < hM; y++) {
-                        yPos = (int) (i * hM + y);
-                        for (x = 0; x < wM; x++) {
-                            xPos = (int) (j * wM + x);
-                            int xyPos = (yPos * wDst2 + xPos) * 4;
-                            r += buf2.getElem(xyPos);
-                            g += buf2.getElem(xyPos + 1);
-                            b += buf2.getElem(xyPos + 2);
-                            a += buf2.getElem(xyPos + 3);
-                        }
-                    }
-
-                    int pos = (i * targetWidth + j) * 4;
-                    bufDst.setElem(pos, Math.round(r / m));
-                    bufDst.setElem(pos + 1, Math.round(g / m));
-                    bufDst.setElem(pos + 2, Math.round(b / m));
-                    bufDst.setElem(pos + 3, Math.round(a / m));
-                }
-            }
-        } else {
-            bufDst = buf2;
-        }
-
-        BufferedImage dstImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_4BYTE_ABGR);
-        dstImage.setData(Raster.createRaster(dstImage.getSampleModel(), bufDst, null));
-        return dstImage;
+        return BicubicScaler.scale(normalizeImageType(srcImage), targetWidth, targetHeight);
     }
 
     private static BufferedImage scaleImageIncrementally(BufferedImage src, int targetWidth, int targetHeight) {
@@ -522,17 +646,30 @@ public class ImageUtils {
      * @return A new image without the cropped region.
      */
     public static BufferedImage cropImage(BufferedImage image, Region regionToCrop) {
+        BufferedImage croppedImage = cropImageView(image, regionToCrop);
+        if (croppedImage == image) {
+            return image;
+        }
+
+        return copyImage(croppedImage);
+    }
+
+    /**
+     * Same as {@link #cropImage(BufferedImage, Region)}, but returns a view of the cropped region, like
+     * {@link #getImagePartView(BufferedImage, Region)}, instead of copying its pixels.
+     * @param image        The image to crop.
+     * @param regionToCrop The region to crop from the image.
+     * @return A view of the part of the image inside the region, or the image itself if they don't intersect.
+     */
+    public static BufferedImage cropImageView(BufferedImage image, Region regionToCrop) {
+        ArgumentGuard.notNull(image, "image");
         Region imageRegion = new Region(0, 0, image.getWidth(), image.getHeight());
         imageRegion.intersect(regionToCrop);
         if (imageRegion.isSizeEmpty()) {
             return image;
         }
 
-        BufferedImage croppedImage = Scalr.crop(image, imageRegion.getLeft(),
-                imageRegion.getTop(), imageRegion.getWidth(),
-                imageRegion.getHeight());
-
-        return normalizeImageType(croppedImage);
+        return getImagePartView(image, imageRegion);
     }
 
     /**
@@ -553,4 +690,63 @@ public class ImageUtils {
         }
     }
 
+    /**
+     * Decodes a base64 string as it is read, skipping whitespace and padding
+     */
+    private static class Base64StringInputStream extends InputStream {
+        private static final int[] DECODING_TABLE = new int[128];
+
+        static {
+            Arrays.fill(DECODING_TABLE, -1);
+            String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+            for (int i = 0; i < alphabet.length(); i++) {
+                DECODING_TABLE[alphabet.charAt(i)] = i;
+            }
+            // The url safe alphabet
+            DECODING_TABLE['-'] = 62;
+            DECODING_TABLE['_'] = 63;
+        }
+
+        private final String base64;
+        private int position = 0;
+        private int bits = 0;
+        private int bitsCount = 0;
+
+        Base64StringInputStream(String base64) {
+            this.base64 = base64;
+        }
+
+        @Override
+        public int read() {
+            byte[] singleByte = new byte[1];
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            int count = 0;
+            int end = base64.length();
+            while (count < length) {
+                if (bitsCount >= 8) {
+                    bitsCount -= 8;
+                    bytes[offset + count++] = (byte) (bits >> bitsCount);
+                    continue;
+                }
+
+                if (position == end) {
+                    break;
+                }
+
+                char c = base64.charAt(position++);
+                int value = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+                if (value != -1) {
+                    // Only the bits which weren't read yet are kept
+                    bits = (bits << 6 | value) & 0xFFFF;
+                    bitsCount += 6;
+                }
+            }
+
+            return count == 0 && length > 0 ? -1 : count;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package com.applitools.utils;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The pixels of an image in a memory mapped temporary file instead of the heap.
+ * It is used for very large images, like stitched full page screenshots, so they don't take the heap.
+ * The pixels are laid out as RGBA bytes, which is the order of the bands in a {@link BufferedImage#TYPE_4BYTE_ABGR}
+ * image and the order of the pixel bytes in a PNG, so rows can be copied in and out of it as they are.
+ */
+public class MappedImageDataBuffer extends DataBuffer {
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int[] RGBA_BAND_OFFSETS = {0, 1, 2, 3};
+
+    private final MappedByteBuffer buffer;
+
+    private MappedImageDataBuffer(MappedByteBuffer buffer, int size) {
+        super(DataBuffer.TYPE_BYTE, size);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates an RGBA image whose pixels are in a memory mapped temporary file.
+     * The file is deleted right away, and its memory is released once the image is garbage collected.
+     * @throws IOException If the temporary file couldn't be created or mapped.
+     */
+    public static BufferedImage createImage(int width, int height) throws IOException {
+        ArgumentGuard.greaterThanZero(width, "width");
+        ArgumentGuard.greaterThanZero(height, "height");
+        long size = (long) width * height * BYTES_PER_PIXEL;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Image of size %dx%d is too large to be mapped", width, height));
+        }
+
+        File file = File.createTempFile("applitools-image", ".raw");
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // The mapping stays valid after the file is deleted. Where a mapped file can't be deleted, it is deleted on exit.
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+
+        MappedImageDataBuffer dataBuffer = new MappedImageDataBuffer(buffer, (int) size);
+        SampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height,
+                BYTES_PER_PIXEL, width * BYTES_PER_PIXEL, RGBA_BAND_OFFSETS);
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * @return True if the pixels of the image are in a memory mapped file
+     */
+    public static boolean isMapped(BufferedImage image) {
+        return image.getRaster().getDataBuffer() instanceof MappedImageDataBuffer;
+    }
+
+    /**
+     * Copies the given pixels into the mapped image, clipped to its bounds, a row at a time.
+     * @param image The mapped image to write to.
+     * @param x     The left of the pixels in the mapped image.
+     * @param y     The top of the pixels in the mapped image.
+     * @param part  The pixels to write.
+     */
+    public static void setRect(BufferedImage image, int x, int y, BufferedImage part) {
+        ArgumentGuard.isValidState(isMapped(image), "The image isn't mapped");
+        WritableRaster raster = image.getRaster();
+        MappedImageDataBuffer dataBuffer = (MappedImageDataBuffer) raster.getDataBuffer();
+        Raster partRaster = ImageUtils.normalizeImageType(part).getRaster();
+
+        int fromX = Math.max(x, 0);
+        int fromY = Math.max(y, 0);
+        int toX = Math.min(x + part.getWidth(), image.getWidth());
+        int toY = Math.min(y + part.getHeight(), image.getHeight());
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+
+        // The data elements of an ABGR raster are its bands, in RGBA order, so they are copied as they are
+        int rowLength = (toX - fromX) * BYTES_PER_PIXEL;
+        int scanlineStride = image.getWidth() * BYTES_PER_PIXEL;
+        byte[] row = new byte[rowLength];
+        for (int rowY = fromY; rowY < toY; rowY++) {
+            partRaster.getDataElements(partRaster.getMinX() + fromX - x, partRaster.getMinY() + rowY - y, toX - fromX, 1, row);
+            dataBuffer.write(rowY * scanlineStride + fromX * BYTES_PER_PIXEL, row, 0, rowLength);
+        }
+    }
+
+    /**
+     * Copies bytes of the image into the given array
+     */
+    public void read(int index, byte[] bytes, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(index);
+        view.get(bytes, offset, length);
+    }
+
+    /**
+     * Copies the given bytes into the image
+     */
+    public void write(int index, byte[] bytes, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(index);
+        view.put(bytes, offset, length);
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        return buffer.get(i) & 0xFF;
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+        buffer.put(i, (byte) val);
+    }
+}
@@ -0,0 +1,255 @@
+package com.applitools.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes PNG images straight into the bytes of a {@link ImageUtils#REQUIRED_IMAGE_TYPE} image.
+ * Only the 8 bit truecolor images, with or without alpha, which are returned by the browsers, are supported.
+ * The rows are inflated and unfiltered one at a time, without decoding the whole image into an intermediate image.
+ */
+public class PngDecoder {
+    /**
+     * The number of bytes read before the decoder knows if the image is supported
+     */
+    public static final int HEADER_LENGTH = 33;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int IHDR = 0x49484452;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+
+    private static final int COLOR_TYPE_TRUECOLOR = 2;
+    private static final int COLOR_TYPE_TRUECOLOR_ALPHA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+
+    private PngDecoder() {
+    }
+
+    /**
+     * Decodes the PNG in the stream. The stream isn't closed.
+     * @return The decoded image, or null if the stream isn't a PNG which this decoder supports.
+     * In that case only the first {@link #HEADER_LENGTH} bytes of the stream were read.
+     * @throws IOException If the stream failed or the PNG is corrupted.
+     */
+    public static BufferedImage decode(InputStream stream) throws IOException {
+        ArgumentGuard.notNull(stream, "stream");
+        DataInputStream dataStream = new DataInputStream(stream);
+        byte[] signature = new byte[PNG_SIGNATURE.length];
+        dataStream.readFully(signature);
+        if (!Arrays.equals(signature, PNG_SIGNATURE) || dataStream.readInt() != 13 || dataStream.readInt() != IHDR) {
+            return null;
+        }
+
+        int width = dataStream.readInt();
+        int height = dataStream.readInt();
+        int bitDepth = dataStream.readUnsignedByte();
+        int colorType = dataStream.readUnsignedByte();
+        int compressionMethod = dataStream.readUnsignedByte();
+        int filterMethod = dataStream.readUnsignedByte();
+        int interlaceMethod = dataStream.readUnsignedByte();
+        dataStream.readInt(); // CRC
+        if (width <= 0 || height <= 0 || (long) width * height * 4 > Integer.MAX_VALUE || bitDepth != 8
+                || (colorType != COLOR_TYPE_TRUECOLOR && colorType != COLOR_TYPE_TRUECOLOR_ALPHA)
+                || compressionMethod != 0 || filterMethod != 0 || interlaceMethod != 0) {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, ImageUtils.REQUIRED_IMAGE_TYPE);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int bytesPerPixel = colorType == COLOR_TYPE_TRUECOLOR_ALPHA ? 4 : 3;
+        int rowLength = width * bytesPerPixel;
+        byte[] previous = new byte[rowLength];
+        byte[] current = new byte[rowLength];
+
+        Inflater inflater = new Inflater();
+        try {
+            DataInputStream pixelsStream = new DataInputStream(
+                    new InflaterInputStream(new IdatInputStream(dataStream), inflater, INFLATER_BUFFER_SIZE));
+            int offset = 0;
+            for (int y = 0; y < height; y++) {
+                int filter = pixelsStream.readUnsignedByte();
+                pixelsStream.readFully(current);
+                unfilterRow(filter, current, previous, bytesPerPixel);
+                if (bytesPerPixel == 4) {
+                    offset = copyRgbaRow(current, data, offset);
+                } else {
+                    offset = copyRgbRow(current, data, offset);
+                }
+
+                byte[] temp = previous;
+                previous = current;
+                current = temp;
+            }
+        } catch (EOFException e) {
+            throw new IOException("The PNG image data is truncated", e);
+        } finally {
+            inflater.end();
+        }
+
+        return image;
+    }
+
+    private static int copyRgbaRow(byte[] row, byte[] data, int offset) {
+        for (int i = 0; i < row.length; i += 4) {
+            data[offset] = row[i + 3];
+            data[offset + 1] = row[i + 2];
+            data[offset + 2] = row[i + 1];
+            data[offset + 3] = row[i];
+            offset += 4;
+        }
+        return offset;
+    }
+
+    private static int copyRgbRow(byte[] row, byte[] data, int offset) {
+        for (int i = 0; i < row.length; i += 3) {
+            data[offset] = (byte) 0xFF;
+            data[offset + 1] = row[i + 2];
+            data[offset + 2] = row[i + 1];
+            data[offset + 3] = row[i];
+            offset += 4;
+        }
+        return offset;
+    }
+
+    /**
+     * Reverses the filter of the current row in place
+     */
+    private static void unfilterRow(int filter, byte[] current, byte[] previous, int bytesPerPixel) throws IOException {
+        int length = current.length;
+        switch (filter) {
+            case FILTER_NONE:
+                break;
+            case FILTER_SUB:
+                for (int i = bytesPerPixel; i < length; i++) {
+                    current[i] += current[i - bytesPerPixel];
+                }
+                break;
+            case FILTER_UP:
+                for (int i = 0; i < length; i++) {
+                    current[i] += previous[i];
+                }
+                break;
+            case FILTER_AVERAGE:
+                for (int i = 0; i < bytesPerPixel; i++) {
+                    current[i] += (previous[i] & 0xFF) >>> 1;
+                }
+                for (int i = bytesPerPixel; i < length; i++) {
+                    current[i] += ((current[i - bytesPerPixel] & 0xFF) + (previous[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case FILTER_PAETH:
+                // Without a left pixel, the predictor is always the upper pixel
+                for (int i = 0; i < bytesPerPixel; i++) {
+                    current[i] += previous[i];
+                }
+                for (int i = bytesPerPixel; i < length; i++) {
+                    int left = current[i - bytesPerPixel] & 0xFF;
+                    int up = previous[i] & 0xFF;
+                    int upperLeft = previous[i - bytesPerPixel] & 0xFF;
+                    current[i] += paethPredictor(left, up, upperLeft);
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type " + filter);
+        }
+    }
+
+    private static int paethPredictor(int left, int up, int upperLeft) {
+        int estimate = left + up - upperLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int upDistance = Math.abs(estimate - up);
+        int upperLeftDistance = Math.abs(estimate - upperLeft);
+        if (leftDistance <= upDistance && leftDistance <= upperLeftDistance) {
+            return left;
+        }
+        return upDistance <= upperLeftDistance ? up : upperLeft;
+    }
+
+    /**
+     * Reads the data of the consecutive IDAT chunks as a single stream, skipping the chunks before them
+     */
+    private static class IdatInputStream extends InputStream {
+        private final DataInputStream stream;
+        private int remaining = 0;
+        private boolean isDone = false;
+        private boolean isStarted = false;
+
+        IdatInputStream(DataInputStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * @return false if there is no more image data
+         */
+        private boolean nextChunk() throws IOException {
+            while (!isDone && remaining == 0) {
+                if (isStarted) {
+                    stream.readInt(); // CRC of the previous chunk
+                }
+
+                int length = stream.readInt();
+                int type = stream.readInt();
+                if (type == IDAT) {
+                    isStarted = true;
+                    remaining = length;
+                } else if (isStarted || type == IEND) {
+                    // The image data ends with the first chunk which isn't IDAT
+                    isDone = true;
+                } else {
+                    skipFully(length + 4);
+                }
+            }
+            return !isDone;
+        }
+
+        private void skipFully(long count) throws IOException {
+            while (count > 0) {
+                long skipped = stream.skip(count);
+                if (skipped <= 0) {
+                    stream.readByte();
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int count = stream.read(bytes, offset, Math.min(length, remaining));
+            if (count == -1) {
+                throw new EOFException();
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.applitools.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes images of type {@link ImageUtils#REQUIRED_IMAGE_TYPE}, and images mapped by {@link MappedImageDataBuffer},
+ * as PNG, straight from their backing bytes.
+ * The rows of large images are filtered in parallel, while the filtered rows are compressed in order.
+ * Images of other types are encoded with {@link ImageIO}.
+ */
+public class PngEncoder {
+
+    public enum FilterStrategy {
+        NONE, SUB, UP, AVERAGE, PAETH,
+
+        /**
+         * Picks the filter with the minimum sum of absolute differences for every row, like libpng does
+         */
+        ADAPTIVE
+    }
+
+    public static final String COMPRESSION_LEVEL_ENV = "APPLITOOLS_PNG_COMPRESSION_LEVEL";
+    public static final String FILTER_STRATEGY_ENV = "APPLITOOLS_PNG_FILTER_STRATEGY";
+    public static final int DEFAULT_COMPRESSION_LEVEL = 4;
+
+    // Adaptive filtering compresses better. The default doesn't depend on the machine,
+    // so the same image is always encoded to the same bytes, and only the parallelism does.
+    public static final FilterStrategy DEFAULT_FILTER_STRATEGY = FilterStrategy.ADAPTIVE;
+
+    static final int ROWS_PER_BLOCK = 64;
+    static final int PARALLEL_FILTERING_MIN_PIXELS = 1024 * 1024;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte FILTER_NONE = 0;
+    private static final byte FILTER_SUB = 1;
+    private static final byte FILTER_UP = 2;
+    private static final byte FILTER_AVERAGE = 3;
+    private static final byte FILTER_PAETH = 4;
+
+    /**
+     * The filtering threads are created only when a large image is encoded for the first time
+     */
+    private static class FilteringExecutorHolder {
+        static final int THREADS = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PngEncoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final int compressionLevel;
+    private final FilterStrategy filterStrategy;
+
+    public PngEncoder() {
+        this(DEFAULT_COMPRESSION_LEVEL, DEFAULT_FILTER_STRATEGY);
+    }
+
+    /**
+     * @param compressionLevel The deflate level, between 0 (no compression) and 9 (best compression).
+     * @param filterStrategy   The filter applied to the rows before they are compressed.
+     */
+    public PngEncoder(int compressionLevel, FilterStrategy filterStrategy) {
+        ArgumentGuard.notNull(filterStrategy, "filterStrategy");
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(String.format("Invalid compression level %d", compressionLevel));
+        }
+        this.compressionLevel = compressionLevel;
+        this.filterStrategy = filterStrategy;
+    }
+
+    /**
+     * @return An encoder with the compression level and filter strategy from the environment variables, if they are set.
+     */
+    public static PngEncoder fromEnvironment() {
+        int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        FilterStrategy filterStrategy = DEFAULT_FILTER_STRATEGY;
+        try {
+            String compressionLevelValue = GeneralUtils.getEnvString(COMPRESSION_LEVEL_ENV);
+            if (compressionLevelValue != null) {
+                compressionLevel = Math.max(Deflater.NO_COMPRESSION,
+                        Math.min(Integer.parseInt(compressionLevelValue.trim()), Deflater.BEST_COMPRESSION));
+            }
+
+            String filterStrategyValue = GeneralUtils.getEnvString(FILTER_STRATEGY_ENV);
+            if (filterStrategyValue != null) {
+                filterStrategy = FilterStrategy.valueOf(filterStrategyValue.trim().toUpperCase());
+            }
+        } catch (IllegalArgumentException ignored) {
+            // Invalid values are ignored, so a typo doesn't fail the tests
+        }
+
+        return new PngEncoder(compressionLevel, filterStrategy);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public FilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    /**
+     * Writes the image as PNG to the given stream. The stream isn't closed.
+     */
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        ArgumentGuard.notNull(image, "image");
+        ArgumentGuard.notNull(outputStream, "outputStream");
+        if (!isSupported(image)) {
+            ImageIO.write(image, "png", outputStream);
+            return;
+        }
+
+        ImageRows rows = new ImageRows(image.getRaster());
+        outputStream.write(PNG_SIGNATURE);
+        writeHeader(outputStream, image.getWidth(), image.getHeight());
+
+        Deflater deflater = new Deflater(compressionLevel);
+        if (filterStrategy != FilterStrategy.NONE) {
+            deflater.setStrategy(Deflater.FILTERED);
+        }
+
+        try {
+            IdatOutputStream idatStream = new IdatOutputStream(outputStream);
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(idatStream, deflater, IDAT_CHUNK_SIZE);
+            if ((long) image.getWidth() * image.getHeight() >= PARALLEL_FILTERING_MIN_PIXELS
+                    && Runtime.getRuntime().availableProcessors() > 1) {
+                writeRowsInParallel(rows, deflaterStream);
+            } else {
+                byte[] block = new byte[ROWS_PER_BLOCK * (rows.rowLength + 1)];
+                for (int fromRow = 0; fromRow < rows.height; fromRow += ROWS_PER_BLOCK) {
+                    int toRow = Math.min(fromRow + ROWS_PER_BLOCK, rows.height);
+                    filterRows(rows, fromRow, toRow, block);
+                    deflaterStream.write(block, 0, (toRow - fromRow) * (rows.rowLength + 1));
+                }
+            }
+
+            deflaterStream.finish();
+            idatStream.flushChunk();
+        } finally {
+            deflater.end();
+        }
+
+        writeChunk(outputStream, "IEND", new byte[0], 0);
+    }
+
+    private static boolean isSupported(BufferedImage image) {
+        if (image.getWidth() == 0 || image.getHeight() == 0) {
+            return false;
+        }
+
+        if (MappedImageDataBuffer.isMapped(image)) {
+            return true;
+        }
+
+        if (image.getType() != ImageUtils.REQUIRED_IMAGE_TYPE) {
+            return false;
+        }
+
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferByte) || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+            return false;
+        }
+
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        return sampleModel.getPixelStride() == BYTES_PER_PIXEL && sampleModel.getNumBands() == BYTES_PER_PIXEL;
+    }
+
+    private void writeRowsInParallel(final ImageRows rows, OutputStream outputStream) throws IOException {
+        // Limits the filtered blocks in memory, while keeping all the threads busy
+        int maxBlocksInFlight = FilteringExecutorHolder.THREADS * 2;
+        Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+        int nextRow = 0;
+        try {
+            while (nextRow < rows.height || !blocks.isEmpty()) {
+                while (nextRow < rows.height && blocks.size() < maxBlocksInFlight) {
+                    final int fromRow = nextRow;
+                    final int toRow = Math.min(fromRow + ROWS_PER_BLOCK, rows.height);
+                    blocks.add(FilteringExecutorHolder.EXECUTOR.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() {
+                            byte[] block = new byte[(toRow - fromRow) * (rows.rowLength + 1)];
+                            filterRows(rows, fromRow, toRow, block);
+                            return block;
+                        }
+                    }));
+                    nextRow = toRow;
+                }
+
+                outputStream.write(blocks.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding png");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed filtering png rows", e.getCause());
+        } finally {
+            for (Future<byte[]> block : blocks) {
+                block.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Filters the rows in the given range into the block, each row prefixed with its filter type
+     */
+    private void filterRows(ImageRows rows, int fromRow, int toRow, byte[] block) {
+        int rowLength = rows.rowLength;
+        byte[] previous = new byte[rowLength];
+        byte[] current = new byte[rowLength];
+        byte[] candidate = filterStrategy == FilterStrategy.ADAPTIVE ? new byte[rowLength] : null;
+        if (fromRow > 0) {
+            rows.readRgbaRow(fromRow - 1, previous);
+        }
+
+        int offset = 0;
+        for (int y = fromRow; y < toRow; y++) {
+            rows.readRgbaRow(y, current);
+            if (filterStrategy == FilterStrategy.ADAPTIVE) {
+                byte bestFilter = FILTER_NONE;
+                long bestSum = filterRow(FILTER_NONE, current, previous, block, offset + 1, Long.MAX_VALUE);
+                for (byte filter = FILTER_SUB; filter <= FILTER_PAETH; filter++) {
+                    long sum = filterRow(filter, current, previous, candidate, 0, bestSum);
+                    if (sum < bestSum) {
+                        bestSum = sum;
+                        bestFilter = filter;
+                        System.arraycopy(candidate, 0, block, offset + 1, rowLength);
+                    }
+                }
+                block[offset] = bestFilter;
+            } else {
+                byte filter = (byte) filterStrategy.ordinal();
+                filterRow(filter, current, previous, block, offset + 1, Long.MAX_VALUE);
+                block[offset] = filter;
+            }
+
+            offset += rowLength + 1;
+            byte[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+    }
+
+    /**
+     * Filters a row into the output. The filtering stops when the sum of the absolute values of the filtered bytes,
+     * as signed bytes, exceeds the given limit, since the row won't be used.
+     * @return The sum of the absolute values of the filtered bytes
+     */
+    private static long filterRow(byte filter, byte[] current, byte[] previous, byte[] output, int offset, long limit) {
+        switch (filter) {
+            case FILTER_SUB:
+                return filterSub(current, output, offset, limit);
+            case FILTER_UP:
+                return filterUp(current, previous, output, offset, limit);
+            case FILTER_AVERAGE:
+                return filterAverage(current, previous, output, offset, limit);
+            case FILTER_PAETH:
+                return filterPaeth(current, previous, output, offset, limit);
+            default:
+                return filterNone(current, output, offset);
+        }
+    }
+
+    private static long filterNone(byte[] current, byte[] output, int offset) {
+        System.arraycopy(current, 0, output, offset, current.length);
+        long sum = 0;
+        for (byte value : current) {
+            sum += Math.abs(value);
+        }
+        return sum;
+    }
+
+    private static long filterSub(byte[] current, byte[] output, int offset, long limit) {
+        long sum = 0;
+        for (int i = 0; i < BYTES_PER_PIXEL; i++) {
+            output[offset + i] = current[i];
+            sum += Math.abs(current[i]);
+        }
+
+        for (int i = BYTES_PER_PIXEL; i < current.length && sum <= limit; i++) {
+            byte filtered = (byte) (current[i] - current[i - BYTES_PER_PIXEL]);
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+        return sum;
+    }
+
+    private static long filterUp(byte[] current, byte[] previous, byte[] output, int offset, long limit) {
+        long sum = 0;
+        for (int i = 0; i < current.length && sum <= limit; i++) {
+            byte filtered = (byte) (current[i] - previous[i]);
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+        return sum;
+    }
+
+    private static long filterAverage(byte[] current, byte[] previous, byte[] output, int offset, long limit) {
+        long sum = 0;
+        for (int i = 0; i < BYTES_PER_PIXEL; i++) {
+            byte filtered = (byte) (current[i] - ((previous[i] & 0xFF) >>> 1));
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+
+        for (int i = BYTES_PER_PIXEL; i < current.length && sum <= limit; i++) {
+            int average = ((current[i - BYTES_PER_PIXEL] & 0xFF) + (previous[i] & 0xFF)) >>> 1;
+            byte filtered = (byte) (current[i] - average);
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+        return sum;
+    }
+
+    private static long filterPaeth(byte[] current, byte[] previous, byte[] output, int offset, long limit) {
+        long sum = 0;
+        // Without a left pixel, the predictor is always the upper pixel
+        for (int i = 0; i < BYTES_PER_PIXEL; i++) {
+            byte filtered = (byte) (current[i] - previous[i]);
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+
+        for (int i = BYTES_PER_PIXEL; i < current.length && sum <= limit; i++) {
+            int left = current[i - BYTES_PER_PIXEL] & 0xFF;
+            int up = previous[i] & 0xFF;
+            int upperLeft = previous[i - BYTES_PER_PIXEL] & 0xFF;
+            byte filtered = (byte) (current[i] - paethPredictor(left, up, upperLeft));
+            output[offset + i] = filtered;
+            sum += Math.abs(filtered);
+        }
+        return sum;
+    }
+
+    private static int paethPredictor(int left, int up, int upperLeft) {
+        int estimate = left + up - upperLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int upDistance = Math.abs(estimate - up);
+        int upperLeftDistance = Math.abs(estimate - upperLeft);
+        if (leftDistance <= upDistance && leftDistance <= upperLeftDistance) {
+            return left;
+        }
+        return upDistance <= upperLeftDistance ? up : upperLeft;
+    }
+
+    private static void writeHeader(OutputStream outputStream, int width, int height) throws IOException {
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // Bit depth
+        header[9] = 6; // Color type: truecolor with alpha
+        header[10] = 0; // Compression method: deflate
+        header[11] = 0; // Filter method: adaptive filtering
+        header[12] = 0; // No interlace
+        writeChunk(outputStream, "IHDR", header, header.length);
+    }
+
+    private static void writeChunk(OutputStream outputStream, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        byte[] intBytes = new byte[4];
+        writeInt(intBytes, 0, length);
+        outputStream.write(intBytes);
+        outputStream.write(typeBytes);
+        outputStream.write(data, 0, length);
+        writeInt(intBytes, 0, (int) crc.getValue());
+        outputStream.write(intBytes);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Splits the compressed data into IDAT chunks
+     */
+    private static class IdatOutputStream extends OutputStream {
+        private final OutputStream outputStream;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count = 0;
+
+        IdatOutputStream(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+
+                int toCopy = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, toCopy);
+                count += toCopy;
+                offset += toCopy;
+                length -= toCopy;
+            }
+        }
+
+        void flushChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            writeChunk(outputStream, "IDAT", buffer, count);
+            count = 0;
+        }
+    }
+}
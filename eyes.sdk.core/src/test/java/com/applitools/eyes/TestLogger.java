@@ -1,6 +1,8 @@
 package com.applitools.eyes;
 
+import com.applitools.connectivity.MockServerConnector;
 import com.applitools.connectivity.ServerConnector;
+import com.applitools.connectivity.api.AsyncRequestCallback;
 import com.applitools.eyes.logging.*;
 import com.applitools.eyes.utils.ReportingTestSuite;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -9,9 +11,16 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestLogger extends ReportingTestSuite {
 
@@ -39,6 +48,63 @@ public class TestLogger extends ReportingTestSuite {
         Assert.assertEquals(networkLogHandler.clientEvents.size(), 0);
     }
 
+    @Test
+    public void testNetworkLoggerDoesntBlockWhileSending() {
+        final CountDownLatch sendLatch = new CountDownLatch(1);
+        final AtomicInteger sentEventsCount = new AtomicInteger();
+        ServerConnector serverConnector = new MockServerConnector() {
+            @Override
+            public void sendLogs(AsyncRequestCallback callback, LogSessionsClientEvents clientEvents) {
+                try {
+                    sendLatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                sentEventsCount.addAndGet(clientEvents.size());
+                super.sendLogs(callback, clientEvents);
+            }
+        };
+
+        NetworkLogHandler networkLogHandler = new NetworkLogHandler(serverConnector);
+        networkLogHandler.MAX_QUEUED_EVENTS = 200;
+        Logger logger = new Logger(networkLogHandler);
+
+        // The server doesn't respond until all the messages are logged
+        for (int i = 0; i < 1000; i++) {
+            logger.log(TraceLevel.Notice, Collections.singleton("testId"), Stage.GENERAL, Type.CLOSE_BATCH, Pair.of("index", i));
+        }
+
+        Assert.assertTrue(networkLogHandler.getDroppedEventsCount() > 0);
+        sendLatch.countDown();
+        networkLogHandler.close();
+        Assert.assertEquals(sentEventsCount.get() + networkLogHandler.getDroppedEventsCount(), 1000);
+        Assert.assertEquals(networkLogHandler.getFailedEventsCount(), 0);
+        Assert.assertEquals(networkLogHandler.clientEvents.size(), 0);
+    }
+
+    @Test
+    public void testFileLoggerRollsBySize() throws IOException {
+        File logsFolder = Files.createTempDirectory("logs").toFile();
+        File logFile = new File(logsFolder, "eyes.log");
+        FileLogger fileLogger = new FileLogger(logFile.getAbsolutePath(), false, false);
+        fileLogger.setMaxFileLength(1000);
+        fileLogger.open();
+        for (int i = 0; i < 100; i++) {
+            fileLogger.onMessage(new ClientEvent("time", "message " + i, TraceLevel.Notice));
+        }
+        fileLogger.close();
+
+        File[] logFiles = Objects.requireNonNull(logsFolder.listFiles());
+        Assert.assertTrue(logFiles.length > 1);
+        int linesCount = 0;
+        for (File file : logFiles) {
+            linesCount += Files.readAllLines(file.toPath(), Charset.defaultCharset()).size();
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertTrue(logsFolder.delete());
+        Assert.assertEquals(linesCount, 100);
+    }
+
     @Test
     public void testMultiLogHandler() {
         MultiLogHandler multiLogHandler = new MultiLogHandler(new StdoutLogHandler(), new StdoutLogHandler(),
@@ -0,0 +1,114 @@
+package com.applitools.eyes;
+
+import com.applitools.eyes.capture.AppOutputProvider;
+import com.applitools.eyes.fluent.CheckSettings;
+import com.applitools.eyes.fluent.ICheckSettingsInternal;
+import com.applitools.eyes.utils.ReportingTestSuite;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class TestMatchWindowTask extends ReportingTestSuite {
+
+    private static final int MATCH_INTERVAL = 500;
+
+    public TestMatchWindowTask() {
+        super.setGroupName("core");
+    }
+
+    @Test
+    public void testViewportProbedOnlyWhileScreenshotChanges() throws IOException {
+        // The screenshot changes twice and then stays the same, the viewport changes twice and then stays the same.
+        final List<String> screenshotHashes = Arrays.asList("a", "b", "c");
+        final List<byte[]> viewports = Arrays.asList(createViewport(Color.RED), createViewport(Color.BLUE),
+                createViewport(Color.GREEN));
+        final List<Long> screenshotTimes = new ArrayList<>();
+        final ProbedEyes eyes = new ProbedEyes(viewports);
+        AppOutputProvider appOutputProvider = new AppOutputProvider() {
+            @Override
+            public AppOutput getAppOutput(Region region, ICheckSettingsInternal checkSettingsInternal, ImageMatchSettings imageMatchSettings) {
+                screenshotTimes.add(System.currentTimeMillis());
+                final String hash = screenshotHashes.get(Math.min(screenshotTimes.size(), screenshotHashes.size()) - 1);
+                return new AppOutput(null, null, null, null, null) {
+                    @Override
+                    public String getScreenshotHash() {
+                        return hash;
+                    }
+                };
+            }
+        };
+
+        int retryTimeout = 3000;
+        MatchWindowTask matchWindowTask = new MatchWindowTask(eyes.getLogger(), mock(ServerConnector.class),
+                new RunningSession(), retryTimeout, eyes, appOutputProvider);
+        long start = System.currentTimeMillis();
+        MatchResult result = matchWindowTask.matchWindow(new Trigger[0], null, null, false,
+                new CheckSettings(retryTimeout), null);
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertFalse(result.getAsExpected());
+
+        // No probes before the screenshot is known to change, 4 until the viewport is stable after "a" -> "b",
+        // 2 after "b" -> "c", and none once the screenshot stays "c".
+        Assert.assertEquals(eyes.probes, 6);
+        Assert.assertEquals(eyes.matches, 3);
+
+        // The last screenshot is the extra try after the retry timeout
+        for (int i = 1; i < screenshotTimes.size() - 1; i++) {
+            long interval = screenshotTimes.get(i) - screenshotTimes.get(i - 1);
+            Assert.assertTrue(interval >= MATCH_INTERVAL, "Screenshots " + (i - 1) + " and " + i + " were " + interval + "ms apart");
+        }
+
+        Assert.assertTrue(elapsed < retryTimeout + 2 * MATCH_INTERVAL, "Matching took " + elapsed + "ms");
+    }
+
+    private static byte[] createViewport(Color color) throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", stream);
+        return stream.toByteArray();
+    }
+
+    private static class ProbedEyes extends TestEyes {
+        private final List<byte[]> viewports;
+        private int probes = 0;
+        private int matches = 0;
+
+        ProbedEyes(List<byte[]> viewports) {
+            this.viewports = viewports;
+        }
+
+        @Override
+        protected byte[] getViewportImageBytes() {
+            probes++;
+            return viewports.get(Math.min(probes, viewports.size()) - 1);
+        }
+
+        @Override
+        protected MatchWindowData prepareForMatch(ICheckSettingsInternal checkSettingsInternal, List<Trigger> userInputs,
+                                                  AppOutput appOutput, String tag, boolean replaceLast,
+                                                  ImageMatchSettings imageMatchSettings, String renderId, String source) {
+            return null;
+        }
+
+        @Override
+        public MatchResult performMatch(MatchWindowData data) {
+            matches++;
+            return new MatchResult();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.applitools.eyes.selenium;
+
+import com.applitools.connectivity.MockServerConnector;
+import com.applitools.eyes.*;
+import com.applitools.utils.GeneralUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestClassicRunner {
+
+    /**
+     * Completes the uploads in the background, where later uploads complete first
+     */
+    private static class DelayedServerConnector extends MockServerConnector {
+        private final List<String> matchedTags = Collections.synchronizedList(new ArrayList<String>());
+        private final AtomicInteger uploadsCount = new AtomicInteger();
+        private final AtomicInteger matchesInFlight = new AtomicInteger();
+        private final AtomicInteger maxMatchesInFlight = new AtomicInteger();
+        private volatile String failedTag = null;
+
+        @Override
+        public void uploadImage(final TaskListener<String> listener, byte[] bytes) {
+            final int delay = Math.max(100 - uploadsCount.getAndIncrement() * 30, 0);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    GeneralUtils.sleep(delay);
+                    listener.onComplete("https://image.com");
+                }
+            }).start();
+        }
+
+        @Override
+        public void matchWindow(final TaskListener<MatchResult> listener, final MatchWindowData data) {
+            int inFlight = matchesInFlight.incrementAndGet();
+            maxMatchesInFlight.set(Math.max(maxMatchesInFlight.get(), inFlight));
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    GeneralUtils.sleep(20);
+                    matchedTags.add(data.getTag());
+                    matchesInFlight.decrementAndGet();
+                    if (data.getTag().equals(failedTag)) {
+                        listener.onFail();
+                        return;
+                    }
+
+                    MatchResult result = new MatchResult();
+                    result.setAsExpected(true);
+                    listener.onComplete(result);
+                }
+            }).start();
+        }
+    }
+
+    private MatchWindowData createMatchWindowData(String tag) {
+        MatchWindowData matchWindowData = mock(MatchWindowData.class);
+        AppOutput appOutput = mock(AppOutput.class);
+        when(appOutput.getScreenshotBytes()).thenReturn(new byte[0]);
+        when(matchWindowData.getAppOutput()).thenReturn(appOutput);
+        when(matchWindowData.getTag()).thenReturn(tag);
+        return matchWindowData;
+    }
+
+    @Test
+    public void testAsyncChecksAreMatchedInOrder() {
+        DelayedServerConnector serverConnector = new DelayedServerConnector();
+        ClassicRunner runner = new ClassicRunner();
+        runner.setServerConnector(serverConnector);
+        runner.setAsyncCheck(true);
+        runner.setMaxChecksInFlightPerTest(2);
+
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tags.add(String.valueOf(i));
+            runner.checkAsync("test", createMatchWindowData(String.valueOf(i)));
+        }
+
+        TestResults testResults = runner.close("test", mock(SessionStopInfo.class));
+        Assert.assertEquals(testResults.getStatus(), TestResultsStatus.Passed);
+        Assert.assertEquals(serverConnector.matchedTags, tags);
+        Assert.assertEquals(serverConnector.maxMatchesInFlight.get(), 1);
+    }
+
+    @Test
+    public void testAsyncCheckFailureReportedOnClose() {
+        DelayedServerConnector serverConnector = new DelayedServerConnector();
+        serverConnector.failedTag = "1";
+        ClassicRunner runner = new ClassicRunner();
+        runner.setServerConnector(serverConnector);
+        runner.setAsyncCheck(true);
+
+        for (int i = 0; i < 3; i++) {
+            runner.checkAsync("test", createMatchWindowData(String.valueOf(i)));
+        }
+
+        try {
+            runner.close("test", mock(SessionStopInfo.class));
+            Assert.fail("Close didn't report the failed check");
+        } catch (EyesException e) {
+            Assert.assertEquals(e.getMessage(), "Failed performing match with the server");
+        }
+
+        // The checks after the failed check are still matched
+        Assert.assertEquals(serverConnector.matchedTags.size(), 3);
+    }
+}
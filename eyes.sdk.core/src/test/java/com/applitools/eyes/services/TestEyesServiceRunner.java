@@ -0,0 +1,128 @@
+package com.applitools.eyes.services;
+
+import com.applitools.connectivity.MockServerConnector;
+import com.applitools.eyes.Logger;
+import com.applitools.eyes.RunningSession;
+import com.applitools.eyes.RunningTest;
+import com.applitools.eyes.SessionStartInfo;
+import com.applitools.eyes.TestResults;
+import com.applitools.eyes.visualgrid.services.RunningTestListener;
+import com.applitools.eyes.visualgrid.services.VisualGridRunningTest;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.Mockito.*;
+
+public class TestEyesServiceRunner {
+
+    private VisualGridRunningTest mockRunningTest(String testId) {
+        VisualGridRunningTest runningTest = mock(VisualGridRunningTest.class);
+        when(runningTest.getTestId()).thenReturn(testId);
+        when(runningTest.prepareForOpen()).thenReturn(mock(SessionStartInfo.class));
+        return runningTest;
+    }
+
+    private EyesServiceRunner startRunner(Collection<VisualGridRunningTest> runningTests) {
+        return startRunner(runningTests, new ConcurrentHashMap<String, RunningTest>());
+    }
+
+    private EyesServiceRunner startRunner(Collection<VisualGridRunningTest> runningTests, Map<String, RunningTest> testsMap) {
+        for (VisualGridRunningTest runningTest : runningTests) {
+            testsMap.put(runningTest.getTestId(), runningTest);
+        }
+
+        EyesServiceRunner eyesServiceRunner = new EyesServiceRunner(new Logger(), new MockServerConnector(), testsMap, 10,
+                null, new ResourcesCache());
+        eyesServiceRunner.start();
+        return eyesServiceRunner;
+    }
+
+    private void waitForParking(EyesServiceRunner eyesServiceRunner) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (eyesServiceRunner.getState() != Thread.State.WAITING) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000, "Runner didn't park when idle");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testIdleRunnerParks() throws InterruptedException {
+        EyesServiceRunner eyesServiceRunner = startRunner(new ArrayList<VisualGridRunningTest>());
+        try {
+            waitForParking(eyesServiceRunner);
+
+            // An idle runner waits without timeout, and stays parked
+            Thread.sleep(100);
+            Assert.assertEquals(eyesServiceRunner.getState(), Thread.State.WAITING);
+        } finally {
+            eyesServiceRunner.stopServices();
+            eyesServiceRunner.join(5000);
+        }
+
+        Assert.assertFalse(eyesServiceRunner.isAlive());
+        Assert.assertNull(eyesServiceRunner.getError());
+    }
+
+    @Test
+    public void testOpenLatencyWhenParked() throws InterruptedException {
+        int testsAmount = 5;
+        List<VisualGridRunningTest> runningTests = new ArrayList<>();
+        for (int i = 0; i < testsAmount; i++) {
+            runningTests.add(mockRunningTest(String.valueOf(i)));
+        }
+
+        EyesServiceRunner eyesServiceRunner = startRunner(runningTests);
+        try {
+            waitForParking(eyesServiceRunner);
+            long start = System.nanoTime();
+            eyesServiceRunner.openTests(runningTests);
+            for (VisualGridRunningTest runningTest : runningTests) {
+                verify(runningTest, timeout(5000)).openCompleted(ArgumentMatchers.<RunningSession>any());
+            }
+
+            // A parked runner is woken by the new tests, instead of the opens waiting for the verification timeout
+            long latencyMs = (System.nanoTime() - start) / 1000000;
+            Assert.assertTrue(latencyMs < 1000, String.format("Opening %d tests took %d ms", testsAmount, latencyMs));
+            Assert.assertNull(eyesServiceRunner.getError());
+        } finally {
+            eyesServiceRunner.stopServices();
+            eyesServiceRunner.join(5000);
+        }
+    }
+
+    @Test
+    public void testCloseWhenTestReadyToClose() throws InterruptedException {
+        VisualGridRunningTest runningTest = mockRunningTest("1");
+        Map<String, RunningTest> testsMap = new ConcurrentHashMap<>();
+        EyesServiceRunner eyesServiceRunner = startRunner(Collections.singletonList(runningTest), testsMap);
+        try {
+            eyesServiceRunner.openTests(Collections.singletonList(runningTest));
+            verify(runningTest, timeout(5000)).openCompleted(ArgumentMatchers.<RunningSession>any());
+            ArgumentCaptor<RunningTestListener> listenerCaptor = ArgumentCaptor.forClass(RunningTestListener.class);
+            verify(runningTest).setRunningTestListener(listenerCaptor.capture());
+
+            // Tests which aren't ready to close are ignored
+            listenerCaptor.getValue().onStateChanged(runningTest);
+            waitForParking(eyesServiceRunner);
+            verify(runningTest, never()).prepareStopSession(anyBoolean());
+
+            when(runningTest.getIsOpen()).thenReturn(true);
+            when(runningTest.isTestReadyToClose()).thenReturn(true);
+            listenerCaptor.getValue().onStateChanged(runningTest);
+            verify(runningTest, timeout(5000)).closeCompleted(ArgumentMatchers.<TestResults>any());
+
+            // Closed tests aren't kept by the runner
+            waitForParking(eyesServiceRunner);
+            Assert.assertFalse(testsMap.containsKey("1"));
+            Assert.assertNull(eyesServiceRunner.getError());
+        } finally {
+            eyesServiceRunner.stopServices();
+            eyesServiceRunner.join(5000);
+        }
+    }
+}
@@ -11,10 +11,12 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestEyesServices {
@@ -158,6 +160,51 @@ public class TestEyesServices {
         Assert.assertEquals(getFailedTasks(checkService), new HashSet<>(Arrays.asList("2", "3", "4", "5")));
     }
 
+    @Test
+    public void testCheckServiceSharesIdenticalScreenshotsUpload() {
+        final AtomicInteger uploadsCount = new AtomicInteger();
+        ServerConnector serverConnector = new MockServerConnector() {
+            @Override
+            public void uploadImage(TaskListener<String> listener, byte[] bytes) {
+                listener.onComplete("https://image.com/" + uploadsCount.incrementAndGet());
+            }
+        };
+
+        AppOutput appOutput1 = mock(AppOutput.class);
+        when(appOutput1.getScreenshotHash()).thenReturn("hash");
+        AppOutput appOutput2 = mock(AppOutput.class);
+        when(appOutput2.getScreenshotHash()).thenReturn("hash");
+        AppOutput compressedAppOutput = mock(AppOutput.class);
+        when(compressedAppOutput.getScreenshotHash()).thenReturn("hash");
+        when(compressedAppOutput.isScreenshotCompressed()).thenReturn(true);
+        AppOutput otherAppOutput = mock(AppOutput.class);
+        when(otherAppOutput.getScreenshotHash()).thenReturn("other hash");
+
+        CheckService checkService = new CheckService(new Logger(), serverConnector);
+        for (AppOutput appOutput : Arrays.asList(appOutput1, appOutput2, compressedAppOutput, otherAppOutput)) {
+            MatchWindowData matchWindowData = mock(MatchWindowData.class);
+            when(matchWindowData.getAppOutput()).thenReturn(appOutput);
+            final AtomicReference<Throwable> error = new AtomicReference<>();
+            checkService.tryUploadImage("1", matchWindowData, new ServiceTaskListener<Void>() {
+                @Override
+                public void onComplete(Void output) {
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    error.set(t);
+                }
+            });
+            Assert.assertNull(error.get());
+        }
+
+        Assert.assertEquals(uploadsCount.get(), 3);
+        verify(appOutput1).setScreenshotUrl("https://image.com/1");
+        verify(appOutput2).setScreenshotUrl("https://image.com/1");
+        verify(compressedAppOutput).setScreenshotUrl("https://image.com/2");
+        verify(otherAppOutput).setScreenshotUrl("https://image.com/3");
+    }
+
     @Test
     public void testCloseService() {
         final SessionStopInfo openFailedStopInfo = mock(SessionStopInfo.class);
@@ -233,7 +280,7 @@ public class TestEyesServices {
     }
 
     @Test
-    public void testRenderServiceRenderStatusFailed() {
+    public void testRenderServiceRenderStatusFailed() throws InterruptedException {
         ServerConnector serverConnector = new MockServerConnector() {
             @Override
             public void renderStatusById(final TaskListener<List<RenderStatusResults>> listener, List<String> testIds, List<String> renderIds) {
@@ -243,10 +290,75 @@ public class TestEyesServices {
 
         RenderService renderService = new RenderService(new Logger(), serverConnector);
         renderService.RENDER_STATUS_POLLING_TIMEOUT = 1000;
+        renderService.INITIAL_POLLING_INTERVAL = 10;
+        renderService.MAX_POLLING_INTERVAL = 50;
         renderService.addInput("1", mock(RenderRequest.class));
         renderService.addInput("2", mock(RenderRequest.class));
-        renderService.run();
+        long start = System.currentTimeMillis();
+        while (renderService.errorQueue.size() < 2 && System.currentTimeMillis() - start < 5000) {
+            renderService.run();
+            Thread.sleep(10);
+        }
+
         Assert.assertEquals(getFailedTasks(renderService), new HashSet<>(Arrays.asList("1", "2")));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    @Test
+    public void testRenderServicePollingBackoff() throws InterruptedException {
+        final int rendersAmount = RenderService.MAX_RENDERS_PER_STATUS_REQUEST + 10;
+        final int pollsPerRender = 4;
+        final Map<String, Integer> pollsCount = new HashMap<>();
+        final List<Integer> requestSizes = new ArrayList<>();
+        ServerConnector serverConnector = new MockServerConnector() {
+            @Override
+            public void renderStatusById(final TaskListener<List<RenderStatusResults>> listener, List<String> testIds, List<String> renderIds) {
+                requestSizes.add(renderIds.size());
+                List<RenderStatusResults> results = new ArrayList<>();
+                for (String testId : testIds) {
+                    Integer polls = pollsCount.get(testId);
+                    polls = polls == null ? 1 : polls + 1;
+                    pollsCount.put(testId, polls);
+                    RenderStatusResults renderStatusResults = mock(RenderStatusResults.class);
+                    when(renderStatusResults.getStatus()).thenReturn(polls == pollsPerRender ? RenderStatus.RENDERED : RenderStatus.RENDERING);
+                    results.add(renderStatusResults);
+                }
+                listener.onComplete(results);
+            }
+        };
+
+        RenderService renderService = new RenderService(new Logger(), serverConnector);
+        renderService.INITIAL_POLLING_INTERVAL = 100;
+        for (int i = 0; i < rendersAmount; i++) {
+            renderService.addInput(String.valueOf(i), mock(RenderRequest.class));
+        }
+
+        long start = System.currentTimeMillis();
+        int iterations = 0;
+        while (renderService.outputQueue.size() < rendersAmount && System.currentTimeMillis() - start < 5000) {
+            renderService.run();
+            iterations++;
+            Thread.sleep(5);
+        }
+
+        Assert.assertEquals(renderService.outputQueue.size(), rendersAmount);
+
+        // Requests are only sent for renders which are due, and they are capped in size
+        int polledRenders = 0;
+        for (int requestSize : requestSizes) {
+            Assert.assertTrue(requestSize <= RenderService.MAX_RENDERS_PER_STATUS_REQUEST);
+            polledRenders += requestSize;
+        }
+        Assert.assertEquals(polledRenders, rendersAmount * pollsPerRender);
+        Assert.assertTrue(requestSizes.size() < iterations);
+
+        RenderStatistics statistics = renderService.getRenderStatistics();
+        Assert.assertEquals(statistics.getRendersCount(), rendersAmount);
+        Assert.assertEquals(statistics.getAveragePollsPerRender(), (double) pollsPerRender);
+        Assert.assertEquals(statistics.getMaxPollsPerRender(), pollsPerRender);
+
+        // The intervals between the polls grow: 100ms, 150ms and 225ms up to the jitter
+        Assert.assertTrue(statistics.getLatencyPercentile(50) >= (100 + 150 + 225) * (1 - RenderService.POLLING_JITTER));
     }
 
     @Test
@@ -323,6 +435,70 @@ public class TestEyesServices {
         Assert.assertEquals(missingResources.get(2).getSha256(), "5");
     }
 
+    @Test
+    public void testCheckResourcesOfMultipleDoms() throws JsonProcessingException {
+        final List<List<String>> checkedHashes = new ArrayList<>();
+        ServerConnector serverConnector = new MockServerConnector() {
+            @Override
+            public void checkResourceStatus(final TaskListener<Boolean[]> listener, Set<String> testIds, String renderId, HashObject... hashes) {
+                List<String> hashesList = new ArrayList<>();
+                Boolean[] result = new Boolean[hashes.length];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashesList.add(hashes[i].getHash());
+                    // Only the odd hashes are missing
+                    result[i] = Integer.parseInt(hashes[i].getHash()) % 2 == 0;
+                }
+
+                checkedHashes.add(hashesList);
+                listener.onComplete(result);
+            }
+        };
+
+        ResourceCollectionService resourceCollectionService = new ResourceCollectionService(new Logger(), serverConnector, null, new HashMap<String, RGridResource>());
+        List<ResourceCollectionService.DomStatusCheck> domStatusChecks = new ArrayList<>();
+        final List<List<RGridResource>> missingResources = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            // The doms share the resources 2 and 3
+            Map<String, RGridResource> resourceMap = new LinkedHashMap<>();
+            for (int j = i * 2; j < i * 2 + 4; j++) {
+                RGridResource resource = mock(RGridResource.class);
+                when(resource.getHashFormat()).thenCallRealMethod();
+                when(resource.getSha256()).thenReturn(String.valueOf(j));
+                when(resource.getUrl()).thenReturn(String.format("http://url%d.com", j));
+                resourceMap.put(resource.getUrl(), resource);
+            }
+
+            RGridDom dom = mock(RGridDom.class);
+            RGridResource domResource = mock(RGridResource.class);
+            when(dom.asResource()).thenReturn(domResource);
+            when(domResource.getSha256()).thenReturn(String.valueOf(10 + i));
+            when(domResource.getUrl()).thenReturn(String.format("http://dom%d.com", i));
+            domStatusChecks.add(resourceCollectionService.new DomStatusCheck(dom, resourceMap, new ServiceTaskListener<List<RGridResource>>() {
+                @Override
+                public void onComplete(List<RGridResource> taskResponse) {
+                    missingResources.add(taskResponse);
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    Assert.fail("Checking resources failed", t);
+                }
+            }));
+        }
+
+        resourceCollectionService.checkResourcesStatus(domStatusChecks);
+        Assert.assertEquals(checkedHashes.size(), 1);
+        Assert.assertEquals(checkedHashes.get(0).toArray(), new String[] {"0", "1", "2", "3", "10", "4", "5", "11"});
+        Assert.assertEquals(missingResources.size(), 2);
+        Assert.assertEquals(missingResources.get(0).size(), 2);
+        Assert.assertEquals(missingResources.get(0).get(0).getSha256(), "1");
+        Assert.assertEquals(missingResources.get(0).get(1).getSha256(), "3");
+        Assert.assertEquals(missingResources.get(1).size(), 3);
+        Assert.assertEquals(missingResources.get(1).get(0).getSha256(), "3");
+        Assert.assertEquals(missingResources.get(1).get(1).getSha256(), "5");
+        Assert.assertEquals(missingResources.get(1).get(2).getSha256(), "11");
+    }
+
     @Test
     public void testResourcesCaching() {
         List<String> urls = Arrays.asList("http://1.com", "http://2.com", "http://3.com");
@@ -352,8 +528,67 @@ public class TestEyesServices {
         Assert.assertEquals(resourceCollectionService.errorQueue.size(), 0);
         Assert.assertEquals(resourceCollectionService.outputQueue.size(), 1);
 
-        Pair<String, Map<String, RGridResource>> pair = resourceCollectionService.outputQueue.get(0);
+        Pair<String, Map<String, RGridResource>> pair = resourceCollectionService.outputQueue.peek();
         Assert.assertEquals(pair.getLeft(), "1");
         Assert.assertEquals(pair.getRight().keySet(), new HashSet<>(urls));
     }
+
+    @Test
+    public void testResourceUploadConcurrency() {
+        final List<TaskListener<Void>> uploadListeners = Collections.synchronizedList(new ArrayList<TaskListener<Void>>());
+        ServerConnector serverConnector = new MockServerConnector() {
+            @Override
+            public Future<?> renderPutResource(Set<String> testIds, String renderID, RGridResource resource, TaskListener<Void> listener) {
+                uploadListeners.add(listener);
+                return null;
+            }
+        };
+
+        ResourceCollectionService resourceCollectionService = new ResourceCollectionService(new Logger(), serverConnector, null, new HashMap<String, RGridResource>());
+        resourceCollectionService.setUploadConcurrency(2);
+
+        List<RGridResource> resources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            RGridResource resource = mock(RGridResource.class);
+            when(resource.getSha256()).thenReturn(String.valueOf(i));
+            resources.add(resource);
+        }
+
+        final AtomicInteger completedDoms = new AtomicInteger();
+        ServiceTaskListener<Void> listener = new ServiceTaskListener<Void>() {
+            @Override
+            public void onComplete(Void taskResponse) {
+                completedDoms.incrementAndGet();
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                Assert.fail("Upload shouldn't fail", t);
+            }
+        };
+
+        // Two doms which share resources, the shared resources are uploaded only once
+        resourceCollectionService.uploadResources(new HashSet<String>(), resources, listener);
+        resourceCollectionService.uploadResources(new HashSet<String>(), resources.subList(3, 5), listener);
+        Assert.assertEquals(uploadListeners.size(), 0);
+
+        // The uploads don't block the runner and only two of them are in flight
+        resourceCollectionService.run();
+        Assert.assertEquals(uploadListeners.size(), 2);
+        resourceCollectionService.run();
+        Assert.assertEquals(uploadListeners.size(), 2);
+
+        for (int i = 0; i < 10 && completedDoms.get() < 2; i++) {
+            for (TaskListener<Void> uploadListener : new ArrayList<>(uploadListeners)) {
+                uploadListener.onComplete(null);
+                uploadListeners.remove(uploadListener);
+            }
+            resourceCollectionService.run();
+            Assert.assertTrue(uploadListeners.size() <= 2);
+        }
+
+        Assert.assertEquals(completedDoms.get(), 2);
+        Assert.assertEquals(resourceCollectionService.uploadsInFlight.get(), 0);
+        Assert.assertTrue(resourceCollectionService.pendingUploadsQueue.isEmpty());
+    }
 }
@@ -0,0 +1,77 @@
+package com.applitools.eyes.services;
+
+import com.applitools.eyes.visualgrid.model.RGridResource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestResourcesCache {
+
+    private RGridResource createResource(int index, int size) {
+        return new RGridResource(String.format("http://%d.com", index), "contentType", new byte[size]);
+    }
+
+    private ResourcesCache createCache(final boolean isOnServer) {
+        ResourcesCache cache = new ResourcesCache(1000);
+        cache.setUploadStatusProvider(new ResourcesCache.UploadStatusProvider() {
+            @Override
+            public boolean isOnServer(String sha256) {
+                return isOnServer;
+            }
+        });
+        return cache;
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        ResourcesCache cache = createCache(true);
+        for (int i = 0; i < 4; i++) {
+            cache.put(String.valueOf(i), createResource(i, 300));
+        }
+
+        // Only the content is evicted, so the resource can still be taken after it was found
+        Assert.assertTrue(cache.containsKey("0"));
+        Assert.assertNull(cache.get("0").getContent());
+        Assert.assertTrue(cache.getStatistics().getContentBytes() <= 1000);
+        Assert.assertEquals(cache.getStatistics().getEvictions(), 1);
+
+        // Accessing a resource makes it recently used
+        Assert.assertNotNull(cache.get("1").getContent());
+        cache.put("4", createResource(4, 300));
+        Assert.assertNotNull(cache.get("1").getContent());
+        Assert.assertNull(cache.get("2").getContent());
+        Assert.assertEquals(cache.size(), 5);
+
+        Assert.assertNull(cache.get("5"));
+        Assert.assertEquals(cache.getStatistics().getHits(), 4);
+        Assert.assertEquals(cache.getStatistics().getMisses(), 1);
+    }
+
+    @Test
+    public void testKeepContentOfResourcesNotOnServer() {
+        ResourcesCache cache = createCache(false);
+        for (int i = 0; i < 4; i++) {
+            cache.put(String.valueOf(i), createResource(i, 300));
+        }
+
+        // The content is still needed for uploading, so the cache stays above its limit
+        Assert.assertEquals(cache.getStatistics().getContentBytes(), 1200);
+        Assert.assertEquals(cache.getStatistics().getEvictions(), 0);
+        Assert.assertNotNull(cache.get("0").getContent());
+    }
+
+    @Test
+    public void testKeepHashOfResourcesOnServer() {
+        ResourcesCache cache = createCache(true);
+
+        RGridResource resource = createResource(0, 600);
+        String hash = resource.getSha256();
+        cache.put("0", resource);
+        cache.put("1", createResource(1, 600));
+
+        // The resource stays in the cache without its content
+        Assert.assertTrue(cache.containsKey("0"));
+        Assert.assertEquals(cache.get("0").getSha256(), hash);
+        Assert.assertEquals(cache.getStatistics().getContentBytes(), 600);
+        Assert.assertEquals(cache.size(), 2);
+    }
+}
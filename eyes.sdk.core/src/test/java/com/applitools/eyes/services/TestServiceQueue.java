@@ -0,0 +1,85 @@
+package com.applitools.eyes.services;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TestServiceQueue {
+
+    @Test
+    public void testBoundedQueue() {
+        ServiceQueue<Integer> queue = new ServiceQueue<>(2);
+        Assert.assertTrue(queue.offer(1));
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertEquals(queue.size(), 2);
+
+        Assert.assertEquals(queue.poll(), Integer.valueOf(1));
+        Assert.assertTrue(queue.offer(3));
+        Assert.assertEquals(queue.drain(), Arrays.asList(2, 3));
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+
+        ServiceQueue.Statistics statistics = queue.getStatistics();
+        Assert.assertEquals(statistics.getDepth(), 0);
+        Assert.assertEquals(statistics.getMaxDepth(), 2);
+        Assert.assertEquals(statistics.getEnqueuedCount(), 3);
+        Assert.assertEquals(statistics.getDequeuedCount(), 3);
+        Assert.assertEquals(statistics.getRejectedCount(), 1);
+    }
+
+    @Test
+    public void testAddBeyondCapacity() {
+        ServiceQueue<Integer> queue = new ServiceQueue<>(1);
+        Assert.assertTrue(queue.offer(1));
+        queue.add(2);
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertEquals(queue.size(), 2);
+        Assert.assertEquals(queue.getStatistics().getMaxDepth(), 2);
+        Assert.assertEquals(queue.drain(), Arrays.asList(1, 2));
+    }
+
+    @Test
+    public void testDrainBatch() {
+        ServiceQueue<Integer> queue = new ServiceQueue<>();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        Assert.assertEquals(queue.drain(3), Arrays.asList(0, 1, 2));
+        Assert.assertEquals(queue.size(), 2);
+        Assert.assertEquals(queue.drain(), Arrays.asList(3, 4));
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int producersAmount = 8;
+        final int itemsPerProducer = 10000;
+        final ServiceQueue<Integer> queue = new ServiceQueue<>();
+        final CountDownLatch latch = new CountDownLatch(producersAmount);
+        for (int i = 0; i < producersAmount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < itemsPerProducer; j++) {
+                        queue.offer(j);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        List<Integer> consumed = new ArrayList<>();
+        while (latch.getCount() > 0 || !queue.isEmpty()) {
+            consumed.addAll(queue.drain());
+        }
+
+        Assert.assertEquals(consumed.size(), producersAmount * itemsPerProducer);
+        Assert.assertEquals(queue.getStatistics().getEnqueuedCount(), producersAmount * itemsPerProducer);
+        Assert.assertEquals(queue.size(), 0);
+    }
+}
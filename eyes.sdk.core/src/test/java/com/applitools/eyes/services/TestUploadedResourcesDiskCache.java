@@ -0,0 +1,98 @@
+package com.applitools.eyes.services;
+
+import com.applitools.eyes.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class TestUploadedResourcesDiskCache {
+    private static final URI SERVER_URL = URI.create("https://eyesapi.applitools.com");
+
+    private File directory;
+
+    @BeforeMethod
+    public void beforeEach() throws IOException {
+        directory = Files.createTempDirectory("resources_cache").toFile();
+    }
+
+    @AfterMethod
+    public void afterEach() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testPersistBetweenRuns() {
+        UploadedResourcesDiskCache cache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL);
+        cache.addAll(Arrays.asList("1", "2"));
+        cache.add("3");
+        cache.close();
+
+        UploadedResourcesDiskCache otherRunCache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL);
+        Assert.assertTrue(otherRunCache.contains("1"));
+        Assert.assertTrue(otherRunCache.contains("2"));
+        Assert.assertTrue(otherRunCache.contains("3"));
+        Assert.assertFalse(otherRunCache.contains("4"));
+        otherRunCache.close();
+
+        // Other servers don't share the cache
+        UploadedResourcesDiskCache otherServerCache = new UploadedResourcesDiskCache(new Logger(), directory, URI.create("https://private.applitools.com"));
+        Assert.assertFalse(otherServerCache.contains("1"));
+        otherServerCache.close();
+    }
+
+    @Test
+    public void testTimeToLive() throws InterruptedException {
+        UploadedResourcesDiskCache cache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL, 50, 10);
+        cache.add("1");
+        Assert.assertTrue(cache.contains("1"));
+        Thread.sleep(100);
+        Assert.assertFalse(cache.contains("1"));
+        cache.close();
+
+        UploadedResourcesDiskCache otherRunCache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL, 50, 10);
+        Assert.assertEquals(otherRunCache.size(), 0);
+        otherRunCache.close();
+    }
+
+    @Test
+    public void testLruEvictionAndCompaction() {
+        UploadedResourcesDiskCache cache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL,
+                UploadedResourcesDiskCache.DEFAULT_TIME_TO_LIVE_MS, 3);
+        cache.addAll(Arrays.asList("1", "2", "3"));
+
+        // Accessing 1 makes 2 the least recently used
+        Assert.assertTrue(cache.contains("1"));
+        cache.add("4");
+        Assert.assertEquals(cache.size(), 3);
+        Assert.assertFalse(cache.contains("2"));
+        Assert.assertTrue(cache.contains("1"));
+
+        for (int i = 5; i < 20; i++) {
+            cache.add(String.valueOf(i));
+        }
+        cache.close();
+
+        File[] files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+
+        UploadedResourcesDiskCache otherRunCache = new UploadedResourcesDiskCache(new Logger(), directory, SERVER_URL,
+                UploadedResourcesDiskCache.DEFAULT_TIME_TO_LIVE_MS, 3);
+        Assert.assertEquals(otherRunCache.size(), 3);
+        Assert.assertTrue(otherRunCache.contains("19"));
+        otherRunCache.close();
+    }
+}
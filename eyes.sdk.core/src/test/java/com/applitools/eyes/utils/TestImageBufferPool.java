@@ -0,0 +1,69 @@
+package com.applitools.eyes.utils;
+
+import com.applitools.utils.ImageBufferPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestImageBufferPool {
+
+    @Test
+    public void testLeaseReusesReleasedBuffers() {
+        ImageBufferPool pool = new ImageBufferPool(1000);
+        byte[] buffer = pool.lease(100);
+        Assert.assertEquals(buffer.length, 100);
+        Assert.assertEquals(pool.getAllocatedBytes(), 100);
+
+        pool.release(buffer);
+        Assert.assertEquals(pool.getPooledBytes(), 100);
+        Assert.assertNotSame(pool.lease(50), buffer);
+        Assert.assertSame(pool.lease(100), buffer);
+        Assert.assertEquals(pool.getAllocatedBytes(), 150);
+        Assert.assertEquals(pool.getReusedBytes(), 100);
+        Assert.assertEquals(pool.getPooledBytes(), 0);
+    }
+
+    @Test
+    public void testReleaseWhenFull() {
+        ImageBufferPool pool = new ImageBufferPool(250);
+        byte[] first = pool.lease(100);
+        byte[] second = pool.lease(100);
+        byte[] third = pool.lease(100);
+        pool.release(first);
+        pool.release(second);
+
+        // There is no room for a third buffer of the same size
+        pool.release(third);
+        Assert.assertEquals(pool.getPooledBytes(), 200);
+
+        // Buffers of other sizes are dropped to make room
+        pool.release(pool.lease(150));
+        Assert.assertEquals(pool.getPooledBytes(), 150);
+
+        // Buffers larger than the pool aren't pooled
+        pool.release(pool.lease(300));
+        Assert.assertEquals(pool.getPooledBytes(), 150);
+    }
+
+    @Test
+    public void testSetMaxPooledBytes() {
+        ImageBufferPool pool = new ImageBufferPool(1000);
+        pool.release(pool.lease(100));
+        pool.release(pool.lease(200));
+        Assert.assertEquals(pool.getPooledBytes(), 300);
+
+        pool.setMaxPooledBytes(500);
+        Assert.assertEquals(pool.getPooledBytes(), 300);
+        pool.setMaxPooledBytes(200);
+        Assert.assertEquals(pool.getPooledBytes(), 0);
+
+        // A pool without room doesn't keep anything
+        pool.setMaxPooledBytes(0);
+        pool.release(pool.lease(100));
+        Assert.assertEquals(pool.getPooledBytes(), 0);
+
+        pool.setMaxPooledBytes(1000);
+        pool.release(pool.lease(100));
+        pool.clear();
+        Assert.assertEquals(pool.getPooledBytes(), 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.applitools.eyes.utils;
+
+import com.applitools.eyes.AppOutput;
+import com.applitools.eyes.Logger;
+import com.applitools.eyes.Region;
+import com.applitools.eyes.TestEyesScreenshot;
+import com.applitools.utils.ImageDeltaCompressor;
+import com.applitools.utils.ImageUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+public class TestImageDeltaCompressor {
+
+    private byte[] readResource(String name) throws IOException, URISyntaxException {
+        return Files.readAllBytes(Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(name)).toURI()));
+    }
+
+    @Test
+    public void testCompressByRawBlocks() throws IOException, URISyntaxException {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        BufferedImage target = ImageUtils.imageFromResource("compression-target.png");
+        byte[] targetEncoded = readResource("compression-target.png");
+        byte[] expected = readResource("compression-block-size-10-result.bin");
+
+        byte[] compressed = ImageDeltaCompressor.compressByRawBlocks(target, targetEncoded, source, 10);
+        Assert.assertEquals(compressed, expected);
+    }
+
+    @Test
+    public void testCompressByRawBlocksDifferentSizes() throws IOException {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        BufferedImage target = ImageUtils.cropImage(ImageUtils.imageFromResource("compression-target.png"),
+                new Region(0, 0, 100, 100));
+        byte[] targetEncoded = ImageUtils.encodeAsPng(target);
+
+        Assert.assertSame(ImageDeltaCompressor.compressByRawBlocks(target, targetEncoded, source), targetEncoded);
+        Assert.assertSame(ImageDeltaCompressor.compressByRawBlocks(target, targetEncoded, null), targetEncoded);
+    }
+
+    @Test
+    public void testCompressScreenshot() {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        BufferedImage target = ImageUtils.imageFromResource("compression-target.png");
+        AppOutput appOutput = new AppOutput(null, new TestEyesScreenshot(new Logger(), target), null, null, null);
+        byte[] originalBytes = appOutput.getScreenshotBytes();
+
+        Assert.assertFalse(appOutput.compressScreenshot(null));
+        Assert.assertSame(appOutput.getScreenshotBytes(), originalBytes);
+
+        Assert.assertTrue(appOutput.compressScreenshot(source));
+        Assert.assertTrue(appOutput.getScreenshotBytes().length < originalBytes.length);
+    }
+}
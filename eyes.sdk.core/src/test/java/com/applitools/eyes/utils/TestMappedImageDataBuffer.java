@@ -0,0 +1,55 @@
+package com.applitools.eyes.utils;
+
+import com.applitools.utils.ImageUtils;
+import com.applitools.utils.MappedImageDataBuffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+public class TestMappedImageDataBuffer {
+
+    private void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        Assert.assertEquals(actual.getWidth(), expected.getWidth());
+        Assert.assertEquals(actual.getHeight(), expected.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (actual.getRGB(x, y) != expected.getRGB(x, y)) {
+                    Assert.fail(String.format("Pixel %d,%d is different", x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetRect() throws IOException {
+        BufferedImage part = ImageUtils.imageFromResource("compression-target.png");
+        int width = part.getWidth() + 20;
+        int height = part.getHeight() * 2;
+
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage mapped = MappedImageDataBuffer.createImage(width, height);
+        Assert.assertTrue(MappedImageDataBuffer.isMapped(mapped));
+        Assert.assertFalse(MappedImageDataBuffer.isMapped(expected));
+        for (int y = 0; y < height; y += part.getHeight() / 2) {
+            expected.getRaster().setRect(20, y, part.getData());
+            MappedImageDataBuffer.setRect(mapped, 20, y, part);
+        }
+
+        assertSamePixels(mapped, expected);
+    }
+
+    @Test
+    public void testEncodeAsPng() throws IOException {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        BufferedImage mapped = MappedImageDataBuffer.createImage(source.getWidth(), source.getHeight());
+        MappedImageDataBuffer.setRect(mapped, 0, 0, source);
+
+        assertSamePixels(ImageUtils.imageFromBytes(ImageUtils.encodeAsPng(mapped)), source);
+
+        BufferedImage mappedPart = mapped.getSubimage(10, 20, 100, 50);
+        BufferedImage sourcePart = source.getSubimage(10, 20, 100, 50);
+        assertSamePixels(ImageUtils.imageFromBytes(ImageUtils.encodeAsPng(mappedPart)), sourcePart);
+    }
+}
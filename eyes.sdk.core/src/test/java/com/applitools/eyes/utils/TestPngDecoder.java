@@ -0,0 +1,76 @@
+package com.applitools.eyes.utils;
+
+import com.applitools.utils.ImageUtils;
+import com.applitools.utils.PngDecoder;
+import com.applitools.utils.PngEncoder;
+import org.apache.commons.codec.binary.Base64;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TestPngDecoder {
+
+    private byte[] getData(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private BufferedImage readWithImageIO(byte[] png) throws IOException {
+        return ImageUtils.copyImageWithType(ImageIO.read(new ByteArrayInputStream(png)), ImageUtils.REQUIRED_IMAGE_TYPE);
+    }
+
+    @Test
+    public void testDecodeSameAsImageIO() throws IOException {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+
+        // Truecolor without alpha
+        BufferedImage rgbSource = ImageUtils.copyImageWithType(source, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream rgbPng = new ByteArrayOutputStream();
+        ImageIO.write(rgbSource, "png", rgbPng);
+        BufferedImage decoded = PngDecoder.decode(new ByteArrayInputStream(rgbPng.toByteArray()));
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(decoded.getType(), ImageUtils.REQUIRED_IMAGE_TYPE);
+        Assert.assertEquals(getData(decoded), getData(readWithImageIO(rgbPng.toByteArray())));
+
+        // Truecolor with alpha, with each of the filters
+        for (PngEncoder.FilterStrategy filterStrategy : PngEncoder.FilterStrategy.values()) {
+            ByteArrayOutputStream rgbaPng = new ByteArrayOutputStream();
+            new PngEncoder(PngEncoder.DEFAULT_COMPRESSION_LEVEL, filterStrategy).encode(source, rgbaPng);
+            decoded = PngDecoder.decode(new ByteArrayInputStream(rgbaPng.toByteArray()));
+            Assert.assertNotNull(decoded);
+            Assert.assertEquals(getData(decoded), getData(source), filterStrategy.name());
+        }
+    }
+
+    @Test
+    public void testUnsupportedImage() throws IOException {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        BufferedImage graySource = ImageUtils.copyImageWithType(source, BufferedImage.TYPE_BYTE_GRAY);
+        ByteArrayOutputStream grayPng = new ByteArrayOutputStream();
+        ImageIO.write(graySource, "png", grayPng);
+
+        InputStream stream = new ByteArrayInputStream(grayPng.toByteArray());
+        Assert.assertNull(PngDecoder.decode(stream));
+        Assert.assertEquals(stream.available(), grayPng.size() - PngDecoder.HEADER_LENGTH);
+
+        // The image utils fall back to ImageIO
+        BufferedImage decoded = ImageUtils.imageFromBytes(grayPng.toByteArray());
+        Assert.assertEquals(getData(decoded), getData(readWithImageIO(grayPng.toByteArray())));
+    }
+
+    @Test
+    public void testImageFromBase64() {
+        BufferedImage source = ImageUtils.imageFromResource("compression-source.png");
+        byte[] png = ImageUtils.encodeAsPng(source);
+        Assert.assertEquals(getData(ImageUtils.imageFromBase64(Base64.encodeBase64String(png))), getData(source));
+
+        // Base64 split into lines
+        Assert.assertEquals(getData(ImageUtils.imageFromBase64(new String(Base64.encodeBase64Chunked(png)))), getData(source));
+    }
+}
@@ -0,0 +1,141 @@
+package com.applitools.eyes.selenium;
+
+import com.applitools.eyes.EyesException;
+import com.applitools.eyes.selenium.wrappers.EyesWebDriver;
+import com.applitools.utils.GeneralUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the result of a dom script which already finished running.
+ * A chunked result is fetched from the browser one chunk at a time, only once the previous chunk was read,
+ * so a parser reading from it never holds more than a single chunk of the result.
+ */
+class DomScriptResultReader extends Reader {
+    private final EyesWebDriver driver;
+    private final String pollingScriptWrapped;
+    private final long deadline;
+
+    private String chunk;
+    private int position = 0;
+    private boolean isDone = false;
+    private int chunksCount = 0;
+    private long resultLength = 0;
+    private EyesException error;
+
+    /**
+     * @param deadline The time in milliseconds after which no more chunks are fetched
+     */
+    DomScriptResultReader(EyesWebDriver driver, String pollingScriptWrapped, long deadline, ScriptResponse firstResponse) {
+        this.driver = driver;
+        this.pollingScriptWrapped = pollingScriptWrapped;
+        this.deadline = deadline;
+        setResponse(firstResponse);
+    }
+
+    private void setResponse(ScriptResponse scriptResponse) {
+        ScriptResponse.Status status = scriptResponse.getStatus();
+        if (status == ScriptResponse.Status.ERROR) {
+            throw new EyesException("DomSnapshot Error: " + scriptResponse.getError());
+        }
+
+        if (status == ScriptResponse.Status.SUCCESS_CHUNKED) {
+            // Each chunk is a json string, which is a part of the json of the whole result
+            chunk = scriptResponse.getValue().asText();
+            isDone = scriptResponse.isDone();
+        } else {
+            chunk = scriptResponse.getValue().toString();
+            isDone = true;
+        }
+
+        position = 0;
+        chunksCount++;
+        resultLength += chunk.length();
+    }
+
+    /**
+     * @return false if there are no more chunks
+     */
+    private boolean nextChunk() throws IOException {
+        if (isDone) {
+            return false;
+        }
+
+        try {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new EyesException("Domsnapshot Timed out");
+            }
+
+            String resultAsString = (String) driver.executeScript(pollingScriptWrapped);
+            setResponse(GeneralUtils.parseJsonToObject(resultAsString, ScriptResponse.class));
+            return true;
+        } catch (EyesException e) {
+            error = e;
+            throw new IOException(e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (chunk == null || position == chunk.length()) {
+            chunk = null;
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+
+        int count = Math.min(length, chunk.length() - position);
+        chunk.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    /**
+     * @return The rest of the result as a single string
+     */
+    String readAll() throws IOException {
+        if (isDone && position == 0 && chunk != null) {
+            String result = chunk;
+            chunk = null;
+            return result;
+        }
+
+        StringBuilder result = new StringBuilder();
+        do {
+            if (chunk != null) {
+                result.append(chunk, position, chunk.length());
+            }
+            chunk = null;
+        } while (nextChunk());
+        return result.toString();
+    }
+
+    /**
+     * @return The error which failed reading the result, or null if there was none
+     */
+    EyesException getError() {
+        return error;
+    }
+
+    int getChunksCount() {
+        return chunksCount;
+    }
+
+    long getResultLength() {
+        return resultLength;
+    }
+
+    @Override
+    public void close() {
+        chunk = null;
+    }
+}
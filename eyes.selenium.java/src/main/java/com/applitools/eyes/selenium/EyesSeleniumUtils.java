@@ -16,14 +16,16 @@ import com.applitools.eyes.selenium.frames.FrameChain;
 import com.applitools.eyes.selenium.wrappers.EyesRemoteWebElement;
 import com.applitools.eyes.selenium.wrappers.EyesSeleniumDriver;
 import com.applitools.eyes.selenium.wrappers.EyesWebDriver;
+import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.tuple.Pair;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * We named this class EyesSeleniumUtils because there's a SeleniumUtils
@@ -33,19 +35,12 @@ public class EyesSeleniumUtils {
 
     private static final long DOM_EXTRACTION_TIMEOUT = 5 * 60 * 1000;
     private static final String DOM_SCRIPTS_WRAPPER = "return (%s)(%s);";
+    private static final long INITIAL_POLLING_INTERVAL = 50;
+    private static final long MAX_POLLING_INTERVAL = 1000;
+    private static final double POLLING_BACKOFF_FACTOR = 1.5;
 
-    private static class TimeoutTask extends TimerTask {
-        private final AtomicBoolean isCheckTimerTimedOut;
-        public TimeoutTask(AtomicBoolean isCheckTimerTimedOut) {
-            this.isCheckTimerTimedOut = isCheckTimerTimedOut;
-        }
-
-        @Override
-        public void run() {
-            isCheckTimerTimedOut.set(true);
-        }
-
-    }
+    private static final ObjectMapper jsonMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     /**
      * #internal
@@ -185,70 +180,122 @@ public class EyesSeleniumUtils {
 
     public static String runDomScript(Logger logger, EyesWebDriver driver, UserAgent userAgent, Set<String> testIds, String domScript,
                                       Map<String, Object> domScriptArguments, String pollingScript) throws Exception {
+        return executeDomScript(logger, driver, userAgent, testIds, domScript, domScriptArguments, pollingScript, (Class<String>) null);
+    }
+
+    /**
+     * Runs the dom script and parses its result while its chunks are fetched from the browser,
+     * so the whole result is never held as a single string.
+     * @param resultType The type to parse the result to
+     */
+    public static <T> T runDomScript(Logger logger, EyesWebDriver driver, UserAgent userAgent, Set<String> testIds, String domScript,
+                                     Map<String, Object> domScriptArguments, String pollingScript, Class<T> resultType) throws Exception {
+        ArgumentGuard.notNull(resultType, "resultType");
+        return executeDomScript(logger, driver, userAgent, testIds, domScript, domScriptArguments, pollingScript, resultType);
+    }
+
+    /**
+     * A dom script which was started in a frame, and its result wasn't collected yet
+     */
+    public static class RunningDomScript {
+        private final String pollingScriptWrapped;
+        private final ScriptResponse firstResponse;
+        private final long startTime;
+
+        private RunningDomScript(String pollingScriptWrapped, ScriptResponse firstResponse, long startTime) {
+            this.pollingScriptWrapped = pollingScriptWrapped;
+            this.firstResponse = firstResponse;
+            this.startTime = startTime;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+    }
+
+    /**
+     * @param resultType The type to parse the result to, or null to return the result as a string
+     */
+    private static <T> T executeDomScript(Logger logger, EyesWebDriver driver, UserAgent userAgent, Set<String> testIds, String domScript,
+                                          Map<String, Object> domScriptArguments, String pollingScript, Class<T> resultType) throws Exception {
+        RunningDomScript runningDomScript = startDomScript(logger, driver, userAgent, testIds, domScript, domScriptArguments, pollingScript);
+        return getDomScriptResult(logger, driver, testIds, runningDomScript, resultType);
+    }
+
+    /**
+     * Starts the dom script in the current frame without waiting for its result.
+     * The result must be collected by {@link #getDomScriptResult} while the driver is in the same frame.
+     */
+    public static RunningDomScript startDomScript(Logger logger, EyesWebDriver driver, UserAgent userAgent, Set<String> testIds, String domScript,
+                                                  Map<String, Object> domScriptArguments, String pollingScript) throws Exception {
         if (domScriptArguments == null) {
             domScriptArguments = new HashMap<>();
         }
 
         Map<String, Object> pollingScriptArguments = new HashMap<>();
 
-        int chunkByteLength = userAgent.getOS().toLowerCase().contains("ios") ? 10 * 1024 * 1024 : 240 * 1024 * 1024;
+        int chunkByteLength = userAgent.getOS().toLowerCase().contains("ios") ? 10 * 1024 * 1024 : 50 * 1024 * 1024;
         domScriptArguments.put("chunkByteLength", chunkByteLength);
         pollingScriptArguments.put("chunkByteLength", chunkByteLength);
-        ObjectMapper mapper = new ObjectMapper();
-        String domScriptWrapped = String.format(DOM_SCRIPTS_WRAPPER, domScript, mapper.writeValueAsString(domScriptArguments));
-        String pollingScriptWrapped = String.format(DOM_SCRIPTS_WRAPPER, pollingScript, mapper.writeValueAsString(pollingScriptArguments));
+        String domScriptWrapped = String.format(DOM_SCRIPTS_WRAPPER, domScript, jsonMapper.writeValueAsString(domScriptArguments));
+        String pollingScriptWrapped = String.format(DOM_SCRIPTS_WRAPPER, pollingScript, jsonMapper.writeValueAsString(pollingScriptArguments));
+
+        long startTime = System.currentTimeMillis();
+        String resultAsString = (String) driver.executeScript(domScriptWrapped);
+        ScriptResponse scriptResponse = GeneralUtils.parseJsonToObject(resultAsString, ScriptResponse.class);
+        logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Starting dom script"));
+        return new RunningDomScript(pollingScriptWrapped, scriptResponse, startTime);
+    }
 
-        AtomicBoolean isCheckTimerTimedOut = new AtomicBoolean(false);
-        Timer timer = new Timer("VG_Check_StopWatch", true);
-        timer.schedule(new TimeoutTask(isCheckTimerTimedOut), DOM_EXTRACTION_TIMEOUT);
+    /**
+     * Waits for the result of a dom script which was started in the current frame.
+     * @param resultType The type to parse the result to, or null to return the result as a string
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getDomScriptResult(Logger logger, EyesWebDriver driver, Set<String> testIds, RunningDomScript runningDomScript,
+                                           Class<T> resultType) throws Exception {
+        // Sibling frames are started together but collected one after another, so the timeout runs from here.
+        // Otherwise a frame collected after a slow sibling could time out without being polled even once.
+        long deadline = System.currentTimeMillis() + DOM_EXTRACTION_TIMEOUT;
+        DomScriptResultReader reader = null;
         try {
-            String resultAsString = (String) driver.executeScript(domScriptWrapped);
-            ScriptResponse scriptResponse = GeneralUtils.parseJsonToObject(resultAsString, ScriptResponse.class);
+            ScriptResponse scriptResponse = runningDomScript.firstResponse;
             ScriptResponse.Status status = scriptResponse.getStatus();
-
-            logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Starting dom script"));
-            while (status == ScriptResponse.Status.WIP && !isCheckTimerTimedOut.get()) {
-                resultAsString = (String) driver.executeScript(pollingScriptWrapped);
+            long pollingInterval = INITIAL_POLLING_INTERVAL;
+            while (status == ScriptResponse.Status.WIP && System.currentTimeMillis() < deadline) {
+                // Small pages are ready almost immediately, while large pages can take many seconds
+                Thread.sleep(pollingInterval);
+                pollingInterval = Math.min((long) (pollingInterval * POLLING_BACKOFF_FACTOR), MAX_POLLING_INTERVAL);
+                String resultAsString = (String) driver.executeScript(runningDomScript.pollingScriptWrapped);
                 scriptResponse = GeneralUtils.parseJsonToObject(resultAsString, ScriptResponse.class);
                 status = scriptResponse.getStatus();
-                Thread.sleep(200);
-            }
-
-            if (status == ScriptResponse.Status.ERROR) {
-                throw new EyesException("DomSnapshot Error: " + scriptResponse.getError());
             }
 
-            if (isCheckTimerTimedOut.get()) {
+            if (status == ScriptResponse.Status.WIP) {
                 throw new EyesException("Domsnapshot Timed out");
             }
 
-            if (status == ScriptResponse.Status.SUCCESS) {
-                return scriptResponse.getValue().toString();
+            reader = new DomScriptResultReader(driver, runningDomScript.pollingScriptWrapped, deadline, scriptResponse);
+            if (status == ScriptResponse.Status.SUCCESS_CHUNKED) {
+                logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Collecting chunks"));
             }
 
-            logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Collecting chunks"));
-            StringBuilder value = new StringBuilder();
-            while (status == ScriptResponse.Status.SUCCESS_CHUNKED && !scriptResponse.isDone() && !isCheckTimerTimedOut.get()) {
-                value.append(GeneralUtils.parseJsonToObject(scriptResponse.getValue().toString(), String.class));
-                resultAsString = (String) driver.executeScript(pollingScriptWrapped);
-                scriptResponse = GeneralUtils.parseJsonToObject(resultAsString, ScriptResponse.class);
-                status = scriptResponse.getStatus();
-                Thread.sleep(200);
+            try {
+                return resultType == null ? (T) reader.readAll() : jsonMapper.readValue(reader, resultType);
+            } catch (IOException e) {
+                if (reader.getError() != null) {
+                    throw reader.getError();
+                }
+                throw e;
             }
-
-            if (status == ScriptResponse.Status.ERROR) {
-                throw new EyesException("DomSnapshot Error: " + scriptResponse.getError());
-            }
-
-            if (isCheckTimerTimedOut.get()) {
-                throw new EyesException("Domsnapshot Timed out");
-            }
-
-            value.append(GeneralUtils.parseJsonToObject(scriptResponse.getValue().toString(), String.class));
-            return value.toString();
         } finally {
-            timer.cancel();
-            logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Finished dom script"));
+            logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("message", "Finished dom script"),
+                    Pair.of("chunksCount", reader == null ? 0 : reader.getChunksCount()),
+                    Pair.of("resultLength", reader == null ? 0 : reader.getResultLength()),
+                    Pair.of("duration", System.currentTimeMillis() - runningDomScript.startTime));
+            if (reader != null) {
+                reader.close();
+            }
         }
     }
 }
@@ -1553,6 +1553,11 @@ public class SeleniumEyes extends RunningTest implements ISeleniumEyes {
         return result;
     }
 
+    @Override
+    protected byte[] getViewportImageBytes() {
+        return driver == null ? null : driver.getRemoteWebDriver().getScreenshotAs(OutputType.BYTES);
+    }
+
     private EyesWebDriverScreenshot getViewportScreenshot(ScaleProviderFactory scaleProviderFactory) {
         try {
             Thread.sleep(getWaitBeforeScreenshots());
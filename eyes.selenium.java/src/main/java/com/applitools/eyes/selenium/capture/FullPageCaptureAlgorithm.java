@@ -14,16 +14,64 @@ import com.applitools.eyes.selenium.positioning.NullRegionPositionCompensation;
 import com.applitools.eyes.selenium.positioning.RegionPositionCompensation;
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
+import com.applitools.utils.ImageBufferPool;
 import com.applitools.utils.ImageUtils;
+import com.applitools.utils.MappedImageDataBuffer;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.*;
 
 public class FullPageCaptureAlgorithm {
     private static final int MIN_SCREENSHOT_PART_SIZE = 10;
 
+    /**
+     * The maximum number of captured parts which wait to be stitched, so the images don't pile up in memory
+     */
+    private static final int MAX_PARTS_IN_FLIGHT = 3;
+
+    /**
+     * Stitched images of this size and larger are kept in a memory mapped file instead of the heap
+     */
+    private static final long MAPPED_IMAGE_MIN_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The parts are prepared in the background while the next parts are captured.
+     * The tasks never wait for each other, so a thread per processor is enough for all the checks.
+     */
+    private static class StitchingExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FullPageStitcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A captured part which is cut, cropped and scaled in the background, and then pasted by the capturing thread
+     */
+    private static class StitchedPart {
+        private final Future<BufferedImage> preparedImage;
+        private final BufferedImage partImage;
+        private final Location originPosition;
+        private final Point pastePosition;
+
+        StitchedPart(Future<BufferedImage> preparedImage, BufferedImage partImage, Location originPosition, Point pastePosition) {
+            this.preparedImage = preparedImage;
+            this.partImage = partImage;
+            this.originPosition = originPosition;
+            this.pastePosition = pastePosition;
+        }
+    }
+
     private final Logger logger;
     private final String testId;
     private final RegionPositionCompensation regionPositionCompensation;
@@ -38,6 +86,9 @@ public class FullPageCaptureAlgorithm {
     private final int maxHeight;
     private final int maxArea;
 
+    // Package-private so tests can stitch serially
+    ExecutorService stitchingExecutor = StitchingExecutorHolder.EXECUTOR;
+
     public FullPageCaptureAlgorithm(Logger logger, String testId, RegionPositionCompensation regionPositionCompensation,
                                     int waitBeforeScreenshots, DebugScreenshotsProvider debugScreenshotsProvider,
                                     EyesScreenshotFactory screenshotFactory,
@@ -212,16 +263,35 @@ public class FullPageCaptureAlgorithm {
                 Pair.of("rectInScreenshot", new Region(rectInScreenshot)));
         SubregionForStitching[] screenshotParts = fullarea.getSubRegions(screenshotPartSize, stitchingOverlap, pixelRatio, rectInScreenshot, logger);
 
-        BufferedImage stitchedImage = new BufferedImage(fullarea.getWidth(), fullarea.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage stitchedImage = createStitchedImage(fullarea.getWidth(), fullarea.getHeight());
         // Take screenshot and stitch for each screenshot part.
         stitchScreenshot(stitchOffset, positionProvider, screenshotParts, stitchedImage, scaleProvider.getScaleRatio(), scaledCutProvider, sizeRatio);
 
+        // The pool is shared by all the checks in the process, so these are process totals rather than this check's
+        ImageBufferPool bufferPool = ImageBufferPool.getInstance();
+        logger.log(testId, Stage.CHECK, Type.CAPTURE_SCREENSHOT,
+                Pair.of("processImageBufferAllocatedBytes", bufferPool.getAllocatedBytes()),
+                Pair.of("processImageBufferReusedBytes", bufferPool.getReusedBytes()),
+                Pair.of("processImageBufferPooledBytes", bufferPool.getPooledBytes()));
+
         positionProvider.restoreState(originalStitchedState);
         originProvider.restoreState(originalPosition);
 
         return stitchedImage;
     }
 
+    private BufferedImage createStitchedImage(int width, int height) {
+        if ((long) width * height * 4 >= MAPPED_IMAGE_MIN_BYTES) {
+            try {
+                return MappedImageDataBuffer.createImage(width, height);
+            } catch (IOException e) {
+                GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.CAPTURE_SCREENSHOT, e, testId);
+            }
+        }
+
+        return new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+    }
+
     private Region coerceImageSize(Region fullarea) {
         if (fullarea.getHeight() < maxHeight && fullarea.getArea() < maxArea)
         {
@@ -253,64 +323,112 @@ public class FullPageCaptureAlgorithm {
     }
 
     private void stitchScreenshot(RectangleSize stitchOffset, PositionProvider stitchProvider,
-                                  SubregionForStitching[] screenshotParts, BufferedImage stitchedImage, double scaleRatio,
-                                  CutProvider scaledCutProvider, float sizeRatio) {
-        //noinspection unused
-        int index = 0;
+                                  SubregionForStitching[] screenshotParts, final BufferedImage stitchedImage, final double scaleRatio,
+                                  final CutProvider scaledCutProvider, float sizeRatio) {
         logger.log(testId, Stage.CHECK, Type.CAPTURE_SCREENSHOT,
                 Pair.of("stitchOffset", stitchOffset),
                 Pair.of("scaleRatio", scaleRatio));
 
-        for (SubregionForStitching partRegion : screenshotParts) {
-            logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.CAPTURE_SCREENSHOT,
-                    Pair.of("scrollTo", new Location(partRegion.getScrollTo())),
-                    Pair.of("pastePhysicalLocation", new Location(partRegion.getPastePhysicalLocation())),
-                    Pair.of("physicalCropArea", new Region(partRegion.getLogicalCropArea())),
-                    Pair.of("logicalCropArea", new Region(partRegion.getPhysicalCropArea())));
-
-            // Scroll to the part's top/left
-            Point partAbsoluteLocationInCurrentFrame = partRegion.getScrollTo();
-            partAbsoluteLocationInCurrentFrame.translate(stitchOffset.getWidth(), stitchOffset.getHeight());
-            Location scrollPosition = new Location(Math.round(partAbsoluteLocationInCurrentFrame.x * sizeRatio), Math.round(partAbsoluteLocationInCurrentFrame.y * sizeRatio));
-            Location originPosition = stitchProvider.setPosition(scrollPosition);
-
-            int dx = scrollPosition.getX() - originPosition.getX();
-            int dy = scrollPosition.getY() - originPosition.getY();
-
-            Point partPastePosition = partRegion.getPastePhysicalLocation();
-            partPastePosition.translate(-dx, -dy);
-            logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.CAPTURE_SCREENSHOT,
-                    Pair.of("scrollPosition", scrollPosition),
-                    Pair.of("originPosition", originPosition),
-                    Pair.of("pastePhysicalLocation", new Location(partPastePosition)));
-
-            // Actually taking the screenshot.
-            try {
-                Thread.sleep(waitBeforeScreenshots);
-            } catch (InterruptedException ignored) {}
-
-            BufferedImage partImage = imageProvider.getImage();
-            BufferedImage cutPart = scaledCutProvider.cut(partImage);
-            BufferedImage croppedPart;
-            Rectangle r = partRegion.getPhysicalCropArea();
-            if (!r.isEmpty()) {
-                croppedPart = ImageUtils.cropImage(cutPart, new Region(r.x, r.y, r.width + dx, r.height + dy));
-            } else {
-                croppedPart = cutPart;
+        // Each part is cut, cropped and scaled in the background while the next parts are captured.
+        // The parts are pasted in order by this thread, since adjacent parts overlap,
+        // and the debug screenshots are saved here as well, so they are never saved concurrently.
+        Deque<StitchedPart> stitchedParts = new ArrayDeque<>();
+        try {
+            for (final SubregionForStitching partRegion : screenshotParts) {
+                if (stitchedParts.size() >= MAX_PARTS_IN_FLIGHT) {
+                    pastePart(stitchedParts.poll(), stitchedImage);
+                }
+
+                logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.CAPTURE_SCREENSHOT,
+                        Pair.of("scrollTo", new Location(partRegion.getScrollTo())),
+                        Pair.of("pastePhysicalLocation", new Location(partRegion.getPastePhysicalLocation())),
+                        Pair.of("physicalCropArea", new Region(partRegion.getLogicalCropArea())),
+                        Pair.of("logicalCropArea", new Region(partRegion.getPhysicalCropArea())));
+
+                // Scroll to the part's top/left
+                Point partAbsoluteLocationInCurrentFrame = partRegion.getScrollTo();
+                partAbsoluteLocationInCurrentFrame.translate(stitchOffset.getWidth(), stitchOffset.getHeight());
+                Location scrollPosition = new Location(Math.round(partAbsoluteLocationInCurrentFrame.x * sizeRatio), Math.round(partAbsoluteLocationInCurrentFrame.y * sizeRatio));
+                Location originPosition = stitchProvider.setPosition(scrollPosition);
+
+                final int dx = scrollPosition.getX() - originPosition.getX();
+                final int dy = scrollPosition.getY() - originPosition.getY();
+
+                Point partPastePosition = partRegion.getPastePhysicalLocation();
+                partPastePosition.translate(-dx, -dy);
+                logger.log(TraceLevel.Info, Collections.singleton(testId), Stage.CHECK, Type.CAPTURE_SCREENSHOT,
+                        Pair.of("scrollPosition", scrollPosition),
+                        Pair.of("originPosition", originPosition),
+                        Pair.of("pastePhysicalLocation", new Location(partPastePosition)));
+
+                // Actually taking the screenshot.
+                try {
+                    Thread.sleep(waitBeforeScreenshots);
+                } catch (InterruptedException ignored) {}
+
+                final BufferedImage partImage = imageProvider.getImage();
+                Future<BufferedImage> preparedImage = stitchingExecutor.submit(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() {
+                        // The part is only read until it's pasted, so it's cropped with views instead of copies
+                        BufferedImage cutPart = scaledCutProvider.cut(partImage);
+                        BufferedImage croppedPart;
+                        Rectangle r = partRegion.getPhysicalCropArea();
+                        if (!r.isEmpty()) {
+                            croppedPart = ImageUtils.cropImageView(cutPart, new Region(r.x, r.y, r.width + dx, r.height + dy));
+                        } else {
+                            croppedPart = cutPart;
+                        }
+
+                        Rectangle r2 = partRegion.getLogicalCropArea();
+
+                        BufferedImage scaledPartImage = ImageUtils.scaleImage(croppedPart, scaleRatio);
+                        return ImageUtils.cropImageView(scaledPartImage, new Region(r2.x, r2.y, r2.width + dx, r2.height + dy));
+                    }
+                });
+                stitchedParts.add(new StitchedPart(preparedImage, partImage, originPosition, partPastePosition));
             }
 
-            Rectangle r2 = partRegion.getLogicalCropArea();
+            while (!stitchedParts.isEmpty()) {
+                pastePart(stitchedParts.poll(), stitchedImage);
+            }
+        } catch (RuntimeException e) {
+            // The parts which are still prepared are of no use anymore
+            for (StitchedPart stitchedPart : stitchedParts) {
+                stitchedPart.preparedImage.cancel(true);
+            }
+            throw e;
+        }
 
-            BufferedImage scaledPartImage = ImageUtils.scaleImage(croppedPart, scaleRatio);
-            BufferedImage scaledCroppedPartImage = ImageUtils.cropImage(scaledPartImage,  new Region(r2.x, r2.y, r2.width + dx, r2.height + dy));
+        debugScreenshotsProvider.save(stitchedImage, "stitched");
+    }
 
-            debugScreenshotsProvider.save(partImage, "partImage-" + originPosition.getX() + "_" + originPosition.getY());
-            debugScreenshotsProvider.save(scaledCroppedPartImage, "scaledCroppedPartImage-" + partPastePosition.getX() + "_" + partPastePosition.getY());
-            stitchedImage.getRaster().setRect(partPastePosition.x, partPastePosition.y, scaledCroppedPartImage.getData());
-            index++;
+    /**
+     * Waits until the part is prepared and pastes it into the stitched image
+     */
+    private void pastePart(StitchedPart stitchedPart, BufferedImage stitchedImage) {
+        BufferedImage scaledCroppedPartImage;
+        try {
+            scaledCroppedPartImage = stitchedPart.preparedImage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EyesException("Interrupted while stitching the screenshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EyesException) {
+                throw (EyesException) e.getCause();
+            }
+            throw new EyesException("Failed stitching the screenshot", e.getCause());
         }
 
-        debugScreenshotsProvider.save(stitchedImage, "stitched");
+        Location originPosition = stitchedPart.originPosition;
+        Point partPastePosition = stitchedPart.pastePosition;
+        debugScreenshotsProvider.save(stitchedPart.partImage, "partImage-" + originPosition.getX() + "_" + originPosition.getY());
+        debugScreenshotsProvider.save(scaledCroppedPartImage, "scaledCroppedPartImage-" + partPastePosition.getX() + "_" + partPastePosition.getY());
+        if (MappedImageDataBuffer.isMapped(stitchedImage)) {
+            MappedImageDataBuffer.setRect(stitchedImage, partPastePosition.x, partPastePosition.y, scaledCroppedPartImage);
+        } else {
+            stitchedImage.getRaster().setRect(partPastePosition.x, partPastePosition.y, scaledCroppedPartImage.getRaster());
+        }
     }
 
     private Region getRegionInScreenshot(Region region, BufferedImage image, double pixelRatio) {
@@ -7,6 +7,7 @@ import com.applitools.eyes.*;
 import com.applitools.eyes.capture.ImageProvider;
 import com.applitools.eyes.config.Configuration;
 import com.applitools.eyes.config.ConfigurationProvider;
+import com.applitools.eyes.config.Feature;
 import com.applitools.eyes.debug.DebugScreenshotsProvider;
 import com.applitools.eyes.debug.FileDebugScreenshotsProvider;
 import com.applitools.eyes.debug.NullDebugScreenshotProvider;
@@ -29,7 +30,6 @@ import com.applitools.eyes.visualgrid.services.VisualGridRunningTest;
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.ClassVersionGetter;
 import com.applitools.utils.GeneralUtils;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.client.utils.URIBuilder;
 import org.openqa.selenium.By;
@@ -55,11 +55,11 @@ public class VisualGridEyes implements ISeleniumEyes {
     private final String PROCESS_PAGE_FOR_IE;
     private final String POLL_RESULT;
     private final String POLL_RESULT_FOR_IE;
-    private EyesSeleniumDriver webDriver;
+    EyesSeleniumDriver webDriver;
     private String url;
     private Boolean isDisabled = Boolean.FALSE;
     private final ConfigurationProvider configurationProvider;
-    private UserAgent userAgent = null;
+    UserAgent userAgent = null;
     private RectangleSize viewportSize;
     private final List<PropertyData> properties = new ArrayList<>();
 
@@ -587,37 +587,96 @@ public class VisualGridEyes implements ISeleniumEyes {
     }
 
     FrameData captureDomSnapshot(Set<String> testIds, EyesTargetLocator switchTo) throws Exception {
+        List<String> skipResources = Collections.emptyList();
+        if (getConfiguration().isFeatureActivated(Feature.SKIP_CACHED_RESOURCES)) {
+            // The skipped resources are returned as resource urls, so their hashes are taken from the runner cache
+            skipResources = new ArrayList<>(runner.getResourcesCacheMap().keySet());
+            logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT, Pair.of("skipResourcesCount", skipResources.size()));
+        }
+
+        return captureDomSnapshot(testIds, switchTo, skipResources);
+    }
+
+    private FrameData captureDomSnapshot(Set<String> testIds, EyesTargetLocator switchTo, List<String> skipResources) throws Exception {
+        EyesSeleniumUtils.RunningDomScript runningDomScript = startDomSnapshot(testIds, skipResources);
+        return getDomSnapshotResult(testIds, switchTo, skipResources, runningDomScript);
+    }
+
+    /**
+     * Starts the dom snapshot in the current frame without waiting for it to finish
+     */
+    private EyesSeleniumUtils.RunningDomScript startDomSnapshot(Set<String> testIds, final List<String> skipResources) throws Exception {
         String domScript = userAgent.isInternetExplorer() ? PROCESS_PAGE_FOR_IE : PROCESS_PAGE;
         String pollingScript = userAgent.isInternetExplorer() ? POLL_RESULT_FOR_IE : POLL_RESULT;
 
-        final String skipList;
-        synchronized (runner.getResourcesCacheMap()) {
-            skipList = new ObjectMapper().writeValueAsString(new HashSet<>(runner.getResourcesCacheMap().keySet()));
-        }
-
         Map<String, Object> arguments = new HashMap<String, Object>() {{
             put("serializeResources", true);
             put("dontFetchResources", getConfiguration().isDisableBrowserFetching());
-            //put("skipResources", skipList);
+            if (!skipResources.isEmpty()) {
+                put("skipResources", skipResources);
+            }
         }};
 
-        String result = EyesSeleniumUtils.runDomScript(logger, webDriver, userAgent, testIds, domScript, arguments, pollingScript);
-        FrameData frameData = GeneralUtils.parseJsonToObject(result, FrameData.class);
-        analyzeFrameData(testIds, frameData, switchTo);
+        return EyesSeleniumUtils.startDomScript(logger, webDriver, userAgent, testIds, domScript, arguments, pollingScript);
+    }
+
+    /**
+     * Waits for the dom snapshot which was started in the current frame, and then snapshots its cross origin frames
+     */
+    private FrameData getDomSnapshotResult(Set<String> testIds, EyesTargetLocator switchTo, List<String> skipResources,
+                                           EyesSeleniumUtils.RunningDomScript runningDomScript) throws Exception {
+        FrameData frameData = EyesSeleniumUtils.getDomScriptResult(logger, webDriver, testIds, runningDomScript, FrameData.class);
+        analyzeFrameData(testIds, frameData, switchTo, skipResources);
         return frameData;
     }
 
-    private void analyzeFrameData(Set<String> testIds, FrameData frameData, EyesTargetLocator switchTo) {
+    private void analyzeFrameData(Set<String> testIds, FrameData frameData, EyesTargetLocator switchTo, List<String> skipResources) {
         FrameChain frameChain = webDriver.getFrameChain().clone();
+
+        // All the cross origin frames are found before switching into any of them
+        List<FrameData.CrossFrame> crossFrames = new ArrayList<>();
+        List<WebElement> crossFrameElements = new ArrayList<>();
         for (FrameData.CrossFrame crossFrame : frameData.getCrossFrames()) {
             if (crossFrame.getSelector() == null) {
                 continue;
             }
 
             try {
-                WebElement frame = webDriver.findElement(By.cssSelector(crossFrame.getSelector()));
-                switchTo.frame(frame);
-                FrameData result = captureDomSnapshot(testIds, switchTo);
+                crossFrameElements.add(webDriver.findElement(By.cssSelector(crossFrame.getSelector())));
+                crossFrames.add(crossFrame);
+            } catch (Throwable t) {
+                GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.DOM_SCRIPT, t, testIds.toArray(new String[0]));
+            }
+        }
+
+        // The snapshots are started in all the frames before waiting for any of them, so they run in parallel in the browser
+        List<EyesSeleniumUtils.RunningDomScript> runningDomScripts = new ArrayList<>();
+        for (WebElement crossFrameElement : crossFrameElements) {
+            EyesSeleniumUtils.RunningDomScript runningDomScript = null;
+            try {
+                switchTo.frame(crossFrameElement);
+                runningDomScript = startDomSnapshot(testIds, skipResources);
+            } catch (Throwable t) {
+                GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.DOM_SCRIPT, t, testIds.toArray(new String[0]));
+            } finally {
+                switchTo.frames(frameChain);
+            }
+            runningDomScripts.add(runningDomScript);
+        }
+
+        for (int i = 0; i < crossFrames.size(); i++) {
+            FrameData.CrossFrame crossFrame = crossFrames.get(i);
+            EyesSeleniumUtils.RunningDomScript runningDomScript = runningDomScripts.get(i);
+            if (runningDomScript == null) {
+                continue;
+            }
+
+            try {
+                switchTo.frame(crossFrameElements.get(i));
+                FrameData result = getDomSnapshotResult(testIds, switchTo, skipResources, runningDomScript);
+                logger.log(TraceLevel.Info, testIds, Stage.CHECK, Type.DOM_SCRIPT,
+                        Pair.of("crossFrameSelector", crossFrame.getSelector()),
+                        Pair.of("duration", System.currentTimeMillis() - runningDomScript.getStartTime()));
                 try {
                     String url = GeneralUtils.sanitizeURL(result.getUrl());
                     URIBuilder builder = new URIBuilder(url);
@@ -645,7 +704,7 @@ public class VisualGridEyes implements ISeleniumEyes {
             try {
                 WebElement frameElement = webDriver.findElement(By.cssSelector(frame.getSelector()));
                 switchTo.frame(frameElement);
-                analyzeFrameData(testIds, frame, switchTo);
+                analyzeFrameData(testIds, frame, switchTo, skipResources);
             } catch (Throwable t) {
                 GeneralUtils.logExceptionStackTrace(logger, Stage.CHECK, Type.DOM_SCRIPT, t, testIds.toArray(new String[0]));
             } finally {
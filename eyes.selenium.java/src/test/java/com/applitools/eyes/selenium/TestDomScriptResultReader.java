@@ -0,0 +1,63 @@
+package com.applitools.eyes.selenium;
+
+import com.applitools.eyes.EyesException;
+import com.applitools.eyes.selenium.wrappers.EyesWebDriver;
+import com.applitools.utils.GeneralUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+public class TestDomScriptResultReader {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private String createChunkResponse(String chunk, boolean isDone) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "SUCCESS_CHUNKED");
+        response.put("value", chunk);
+        response.put("done", isDone);
+        return jsonMapper.writeValueAsString(response);
+    }
+
+    @Test
+    public void testReadChunkedResult() throws Exception {
+        String result = "{\"url\":\"https://applitools.com\",\"text\":\"a \\\"quoted\\\" value\",\"items\":[1,2,3]}";
+        String[] chunks = {result.substring(0, 10), result.substring(10, 35), result.substring(35)};
+
+        EyesWebDriver driver = mock(EyesWebDriver.class);
+        when(driver.executeScript("poll")).thenReturn(createChunkResponse(chunks[1], false), createChunkResponse(chunks[2], true));
+        ScriptResponse firstResponse = GeneralUtils.parseJsonToObject(createChunkResponse(chunks[0], false), ScriptResponse.class);
+        DomScriptResultReader reader = new DomScriptResultReader(driver, "poll", Long.MAX_VALUE, firstResponse);
+        Map<?, ?> parsedResult = jsonMapper.readValue(reader, Map.class);
+        Assert.assertEquals(parsedResult, jsonMapper.readValue(result, Map.class));
+        Assert.assertEquals(reader.getChunksCount(), 3);
+        Assert.assertEquals(reader.getResultLength(), result.length());
+        verify(driver, times(2)).executeScript("poll");
+
+        when(driver.executeScript("poll")).thenReturn(createChunkResponse(chunks[1], false), createChunkResponse(chunks[2], true));
+        firstResponse = GeneralUtils.parseJsonToObject(createChunkResponse(chunks[0], false), ScriptResponse.class);
+        reader = new DomScriptResultReader(driver, "poll", Long.MAX_VALUE, firstResponse);
+        Assert.assertEquals(reader.readAll(), result);
+    }
+
+    @Test
+    public void testReadResultWithError() throws Exception {
+        EyesWebDriver driver = mock(EyesWebDriver.class);
+        when(driver.executeScript("poll")).thenReturn("{\"status\":\"ERROR\",\"error\":\"failed\"}");
+        ScriptResponse firstResponse = GeneralUtils.parseJsonToObject(createChunkResponse("{\"url\":", false), ScriptResponse.class);
+        DomScriptResultReader reader = new DomScriptResultReader(driver, "poll", Long.MAX_VALUE, firstResponse);
+        try {
+            jsonMapper.readValue(reader, Map.class);
+            Assert.fail("The error wasn't reported");
+        } catch (IOException e) {
+            Assert.assertTrue(reader.getError() instanceof EyesException);
+            Assert.assertEquals(reader.getError().getMessage(), "DomSnapshot Error: failed");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.applitools.eyes.selenium.capture;
+
+import com.applitools.eyes.*;
+import com.applitools.eyes.capture.ImageProvider;
+import com.applitools.eyes.debug.NullDebugScreenshotProvider;
+import com.applitools.eyes.positioning.PositionMemento;
+import com.applitools.eyes.positioning.PositionProvider;
+import com.applitools.eyes.scaling.FixedScaleProviderFactory;
+import com.applitools.eyes.utils.ReportingTestSuite;
+import com.applitools.utils.SimplePropertyHandler;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestFullPageCaptureAlgorithm extends ReportingTestSuite {
+
+    private static final int VIEWPORT_WIDTH = 100;
+    private static final int VIEWPORT_HEIGHT = 100;
+
+    public TestFullPageCaptureAlgorithm() {
+        super.setGroupName("selenium");
+    }
+
+    @Test
+    public void testPipelinedStitchingSameAsSerial() {
+        BufferedImage page = createPage(VIEWPORT_WIDTH, 1050);
+
+        ScrollingPage serialPage = new ScrollingPage(page, -1);
+        FullPageCaptureAlgorithm serialAlgorithm = createAlgorithm(serialPage, new UnscaledFixedCutProvider(0, 0, 0, 0));
+        ExecutorService serialExecutor = Executors.newSingleThreadExecutor();
+        serialAlgorithm.stitchingExecutor = serialExecutor;
+        BufferedImage serialImage;
+        try {
+            serialImage = stitch(serialAlgorithm, serialPage);
+        } finally {
+            serialExecutor.shutdown();
+        }
+
+        ScrollingPage scrollingPage = new ScrollingPage(page, -1);
+        BufferedImage pipelinedImage = stitch(createAlgorithm(scrollingPage, new UnscaledFixedCutProvider(0, 0, 0, 0)), scrollingPage);
+
+        Assert.assertEquals(pipelinedImage.getWidth(), serialImage.getWidth());
+        Assert.assertEquals(pipelinedImage.getHeight(), serialImage.getHeight());
+        for (int y = 0; y < serialImage.getHeight(); y++) {
+            for (int x = 0; x < serialImage.getWidth(); x++) {
+                Assert.assertEquals(pipelinedImage.getRGB(x, y), serialImage.getRGB(x, y), "Pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testCaptureFailurePropagates() {
+        ScrollingPage scrollingPage = new ScrollingPage(createPage(VIEWPORT_WIDTH, 1050), 4);
+        FullPageCaptureAlgorithm algorithm = createAlgorithm(scrollingPage, new UnscaledFixedCutProvider(0, 0, 0, 0));
+        try {
+            stitch(algorithm, scrollingPage);
+            Assert.fail("Stitching should have failed");
+        } catch (EyesException e) {
+            Assert.assertSame(e, scrollingPage.failure);
+        }
+    }
+
+    @Test
+    public void testStitchFailurePropagates() {
+        ScrollingPage scrollingPage = new ScrollingPage(createPage(VIEWPORT_WIDTH, 1050), -1);
+        FailingCutProvider cutProvider = new FailingCutProvider(2);
+        FullPageCaptureAlgorithm algorithm = createAlgorithm(scrollingPage, cutProvider);
+        try {
+            stitch(algorithm, scrollingPage);
+            Assert.fail("Stitching should have failed");
+        } catch (EyesException e) {
+            Assert.assertSame(e, cutProvider.failure);
+        }
+    }
+
+    private static FullPageCaptureAlgorithm createAlgorithm(ImageProvider imageProvider, CutProvider cutProvider) {
+        Logger logger = new Logger();
+        return new FullPageCaptureAlgorithm(logger, "test", null, 0, new NullDebugScreenshotProvider(), null,
+                new FixedScaleProviderFactory(logger, 1, new SimplePropertyHandler<ScaleProvider>()), cutProvider, 10,
+                imageProvider, Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+    }
+
+    private static BufferedImage stitch(FullPageCaptureAlgorithm algorithm, ScrollingPage scrollingPage) {
+        return algorithm.getStitchedRegion(Region.EMPTY, Region.EMPTY, scrollingPage, scrollingPage, RectangleSize.EMPTY);
+    }
+
+    private static BufferedImage createPage(int width, int height) {
+        BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                page.setRGB(x, y, 0xff000000 | (x * 2 << 16) | ((y % 256) << 8) | (y / 256 * 50));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * A page which is scrolled like a browser window, and captured one viewport at a time
+     */
+    private static class ScrollingPage implements PositionProvider, ImageProvider {
+        private final BufferedImage page;
+        private final int failingCapture;
+        private int captures = 0;
+        private Location position = Location.ZERO;
+        private EyesException failure;
+
+        /**
+         * @param failingCapture The number of the capture which fails, or -1 for no failure
+         */
+        ScrollingPage(BufferedImage page, int failingCapture) {
+            this.page = page;
+            this.failingCapture = failingCapture;
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            if (++captures == failingCapture) {
+                failure = new EyesException("Failed capturing the viewport");
+                throw failure;
+            }
+
+            BufferedImage viewport = new BufferedImage(VIEWPORT_WIDTH, VIEWPORT_HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+            viewport.getRaster().setRect(-position.getX(), -position.getY(), page.getRaster());
+            return viewport;
+        }
+
+        @Override
+        public Location getCurrentPosition() {
+            return position;
+        }
+
+        @Override
+        public Location setPosition(Location location) {
+            int x = Math.max(0, Math.min(location.getX(), page.getWidth() - VIEWPORT_WIDTH));
+            int y = Math.max(0, Math.min(location.getY(), page.getHeight() - VIEWPORT_HEIGHT));
+            position = new Location(x, y);
+            return position;
+        }
+
+        @Override
+        public RectangleSize getEntireSize() {
+            return new RectangleSize(page.getWidth(), page.getHeight());
+        }
+
+        @Override
+        public PositionMemento getState() {
+            final Location state = position;
+            return new PositionMemento() {
+                @Override
+                public int getX() {
+                    return state.getX();
+                }
+
+                @Override
+                public int getY() {
+                    return state.getY();
+                }
+            };
+        }
+
+        @Override
+        public void restoreState(PositionMemento state) {
+            position = new Location(state.getX(), state.getY());
+        }
+    }
+
+    /**
+     * A cut provider which fails while a part is stitched in the background
+     */
+    private static class FailingCutProvider extends UnscaledFixedCutProvider {
+        private final int failingCut;
+        private int cuts = 0;
+        private volatile EyesException failure;
+
+        FailingCutProvider(int failingCut) {
+            super(0, 0, 0, 0);
+            this.failingCut = failingCut;
+        }
+
+        @Override
+        public synchronized BufferedImage cut(BufferedImage image) {
+            if (++cuts == failingCut) {
+                failure = new EyesException("Failed cutting the part");
+                throw failure;
+            }
+            return super.cut(image);
+        }
+
+        @Override
+        public CutProvider scale(double scaleRatio) {
+            return this;
+        }
+    }
+}
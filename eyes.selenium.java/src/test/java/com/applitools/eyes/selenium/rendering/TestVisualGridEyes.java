@@ -1,30 +1,47 @@
 package com.applitools.eyes.selenium.rendering;
 
 import com.applitools.connectivity.MockServerConnector;
+import com.applitools.eyes.Logger;
 import com.applitools.eyes.ProxySettings;
 import com.applitools.eyes.RectangleSize;
+import com.applitools.eyes.UserAgent;
 import com.applitools.eyes.config.Configuration;
 import com.applitools.eyes.config.ConfigurationProvider;
+import com.applitools.eyes.config.Feature;
+import com.applitools.eyes.selenium.frames.FrameChain;
 import com.applitools.eyes.selenium.wrappers.EyesSeleniumDriver;
+import com.applitools.eyes.selenium.wrappers.EyesTargetLocator;
+import com.applitools.eyes.services.ResourcesCache;
 import com.applitools.eyes.visualgrid.model.DeviceSize;
+import com.applitools.eyes.visualgrid.model.FrameData;
 import com.applitools.eyes.visualgrid.model.IosDeviceInfo;
 import com.applitools.eyes.visualgrid.model.IosDeviceName;
+import com.applitools.eyes.visualgrid.model.RGridResource;
 import com.applitools.eyes.visualgrid.services.RunnerOptions;
 import com.applitools.eyes.visualgrid.services.VisualGridRunner;
 import com.applitools.utils.GeneralUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.remote.SessionId;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.mockito.Mockito.*;
 
 public class TestVisualGridEyes {
 
+    private static final String CHROME_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/86.0.4240.75 Safari/537.36";
+
     @Test
     public void testSetConfiguration() {
         String expectedApiKey = "expectedApiKey";
@@ -119,4 +136,169 @@ public class TestVisualGridEyes {
         Assert.assertEquals(eyes.testList.values().iterator().next().getProxy(), expectedProxy);
         Assert.assertEquals(actualApiKey.get(), expectedApiKey);
     }
+
+    @Test
+    public void testSkipCachedResources() throws Exception {
+        VisualGridRunner runner = new VisualGridRunner(new RunnerOptions().resourcesCacheMaxBytes(1000));
+        ResourcesCache resourcesCache = (ResourcesCache) runner.getResourcesCacheMap();
+        resourcesCache.setUploadStatusProvider(new ResourcesCache.UploadStatusProvider() {
+            @Override
+            public boolean isOnServer(String sha256) {
+                return true;
+            }
+        });
+
+        // The content of the first resource is evicted, but its hash is still known
+        for (int i = 0; i < 4; i++) {
+            String url = String.format("http://%d.com/style.css", i);
+            resourcesCache.put(url, new RGridResource(url, "text/css", new byte[300]));
+        }
+        Assert.assertNull(resourcesCache.get("http://0.com/style.css").getContent());
+
+        Configuration configuration = new Configuration();
+        FakeBrowser browser = new FakeBrowser("#frame1");
+        VisualGridEyes eyes = createEyes(runner, configuration, browser);
+        eyes.captureDomSnapshot(new HashSet<String>(), browser.switchTo);
+        Assert.assertEquals(browser.processPageArguments.keySet(), new HashSet<>(Arrays.asList("top", "#frame1")));
+        for (Map<?, ?> arguments : browser.processPageArguments.values()) {
+            Assert.assertFalse(arguments.containsKey("skipResources"));
+        }
+
+        configuration.setFeatures(Feature.SKIP_CACHED_RESOURCES);
+        browser = new FakeBrowser("#frame1");
+        eyes = createEyes(runner, configuration, browser);
+        eyes.captureDomSnapshot(new HashSet<String>(), browser.switchTo);
+        Assert.assertEquals(browser.processPageArguments.keySet(), new HashSet<>(Arrays.asList("top", "#frame1")));
+        for (Map<?, ?> arguments : browser.processPageArguments.values()) {
+            List<?> skipResources = (List<?>) arguments.get("skipResources");
+            Assert.assertEquals(new HashSet<>(skipResources), resourcesCache.keySet());
+            Assert.assertTrue(skipResources.contains("http://0.com/style.css"));
+            for (Object url : skipResources) {
+                Assert.assertTrue(resourcesCache.containsKey(url));
+                Assert.assertNotNull(resourcesCache.get(url).getSha256());
+            }
+        }
+    }
+
+    @Test
+    public void testStartAllCrossFramesBeforePolling() throws Exception {
+        FakeBrowser browser = new FakeBrowser("#frame1", "#frame2", "#frame3");
+        browser.failingFrames.add("#frame2");
+        VisualGridEyes eyes = createEyes(new VisualGridRunner(), new Configuration(), browser);
+        FrameData frameData = eyes.captureDomSnapshot(new HashSet<String>(), browser.switchTo);
+
+        Assert.assertEquals(browser.events, Arrays.asList("processPage top", "poll top",
+                "processPage #frame1", "processPage #frame2", "processPage #frame3", "poll #frame1", "poll #frame3"));
+
+        // The frame which failed to start is skipped, and its siblings are still added
+        Assert.assertEquals(frameData.getFrames().size(), 2);
+        Assert.assertTrue(frameData.getFrames().get(0).getUrl().startsWith("http://frame1.com/"));
+        Assert.assertTrue(frameData.getFrames().get(1).getUrl().startsWith("http://frame3.com/"));
+        Assert.assertEquals(((List<?>) frameData.getCdt().get(0).get("attributes")).size(), 1);
+        Assert.assertTrue(((List<?>) frameData.getCdt().get(1).get("attributes")).isEmpty());
+        Assert.assertEquals(((List<?>) frameData.getCdt().get(2).get("attributes")).size(), 1);
+    }
+
+    private VisualGridEyes createEyes(VisualGridRunner runner, final Configuration configuration, FakeBrowser browser) {
+        VisualGridEyes eyes = new VisualGridEyes(runner, new ConfigurationProvider() {
+            @Override
+            public Configuration get() {
+                return configuration;
+            }
+        });
+        eyes.webDriver = browser.driver;
+        eyes.userAgent = UserAgent.parseUserAgentString(CHROME_USER_AGENT, true);
+        return eyes;
+    }
+
+    /**
+     * A page with cross origin frames, in which the dom snapshot finishes on the first poll
+     */
+    private static class FakeBrowser {
+        private final ObjectMapper jsonMapper = new ObjectMapper();
+        private final EyesSeleniumDriver driver = mock(EyesSeleniumDriver.class);
+        private final EyesTargetLocator switchTo = mock(EyesTargetLocator.class);
+        private final List<String> crossFrameSelectors;
+        private final Map<WebElement, String> frameElements = new HashMap<>();
+        private final Set<String> failingFrames = new HashSet<>();
+        private final List<String> events = new ArrayList<>();
+        private final Map<String, Map<?, ?>> processPageArguments = new HashMap<>();
+        private String currentFrame = "top";
+
+        FakeBrowser(String... crossFrameSelectors) {
+            this.crossFrameSelectors = Arrays.asList(crossFrameSelectors);
+            for (String selector : crossFrameSelectors) {
+                WebElement frameElement = mock(WebElement.class);
+                frameElements.put(frameElement, selector);
+                when(driver.findElement(By.cssSelector(selector))).thenReturn(frameElement);
+            }
+
+            when(driver.getFrameChain()).thenReturn(new FrameChain(new Logger()));
+            when(driver.executeScript(anyString())).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    return executeScript((String) invocation.getArgument(0));
+                }
+            });
+            when(switchTo.frame(any(WebElement.class))).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    currentFrame = frameElements.get(invocation.getArgument(0));
+                    return driver;
+                }
+            });
+            when(switchTo.frames(any(FrameChain.class))).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    currentFrame = "top";
+                    return driver;
+                }
+            });
+        }
+
+        private String executeScript(String script) throws IOException {
+            // Only the dom snapshot is called with the serialization arguments, which are last in the script
+            String arguments = script.substring(script.lastIndexOf(")({") + 2, script.length() - 2);
+            if (arguments.contains("\"serializeResources\"")) {
+                events.add("processPage " + currentFrame);
+                if (failingFrames.contains(currentFrame)) {
+                    throw new WebDriverException("Failed running the script in " + currentFrame);
+                }
+
+                processPageArguments.put(currentFrame, jsonMapper.readValue(arguments, Map.class));
+                return "{\"status\":\"WIP\"}";
+            }
+
+            events.add("poll " + currentFrame);
+            return "{\"status\":\"SUCCESS\",\"value\":" + jsonMapper.writeValueAsString(createFrameData()) + "}";
+        }
+
+        private Map<String, Object> createFrameData() {
+            List<Map<String, Object>> cdt = new ArrayList<>();
+            List<Map<String, Object>> crossFrames = new ArrayList<>();
+            if (currentFrame.equals("top")) {
+                for (int i = 0; i < crossFrameSelectors.size(); i++) {
+                    Map<String, Object> node = new HashMap<>();
+                    node.put("nodeType", 1);
+                    node.put("nodeName", "IFRAME");
+                    node.put("attributes", new ArrayList<>());
+                    cdt.add(node);
+
+                    Map<String, Object> crossFrame = new HashMap<>();
+                    crossFrame.put("selector", crossFrameSelectors.get(i));
+                    crossFrame.put("index", i);
+                    crossFrames.add(crossFrame);
+                }
+            }
+
+            Map<String, Object> frameData = new HashMap<>();
+            frameData.put("url", currentFrame.equals("top") ? "http://top.com/" : "http://" + currentFrame.substring(1) + ".com/");
+            frameData.put("cdt", cdt);
+            frameData.put("resourceUrls", new ArrayList<>());
+            frameData.put("blobs", new ArrayList<>());
+            frameData.put("frames", new ArrayList<>());
+            frameData.put("crossFrames", crossFrames);
+            return frameData;
+        }
+    }
 }